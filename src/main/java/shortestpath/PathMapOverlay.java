@@ -6,6 +6,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.Stroke;
 import java.awt.geom.Area;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +20,7 @@ import net.runelite.client.ui.overlay.OverlayLayer;
 import net.runelite.client.ui.overlay.OverlayPosition;
 import net.runelite.client.ui.overlay.OverlayPriority;
 import net.runelite.client.ui.overlay.worldmap.WorldMapOverlay;
+import shortestpath.pathfinder.DistanceField;
 
 public class PathMapOverlay extends Overlay {
     private final Client client;
@@ -28,6 +30,11 @@ public class PathMapOverlay extends Overlay {
     @Inject
     private WorldMapOverlay worldMapOverlay;
 
+    /** The route to the hovered tile, kept while the same tile of the same travel times is hovered */
+    private DistanceField routeField;
+    private int routeTile = WorldPointUtil.UNDEFINED;
+    private List<WorldPoint> route;
+
     @Inject
     private PathMapOverlay(Client client, ShortestPathPlugin plugin, ShortestPathConfig config) {
         this.client = client;
@@ -65,6 +72,25 @@ public class PathMapOverlay extends Overlay {
             }
         }
 
+        DistanceField playerField = plugin.getPlayerField();
+        if (config.drawReachableArea() && playerField != null) {
+            graphics.setColor(config.colourReachableArea());
+            Rectangle extent = getWorldMapExtent(client.getWidget(WidgetInfo.WORLD_MAP_VIEW).getBounds());
+            final int z = client.getPlane();
+            final int radius = config.travelTimeRadius();
+            for (int x = extent.x; x < (extent.x + extent.width + 1); x++) {
+                for (int y = extent.y - extent.height; y < (extent.y + 1); y++) {
+                    if (playerField.getDistance(WorldPointUtil.packWorldPoint(x, y, z)) <= radius) {
+                        fillOnMap(graphics, new WorldPoint(x, y, z));
+                    }
+                }
+            }
+        }
+
+        if (config.drawTravelTimes() && playerField != null) {
+            drawHoveredRoute(graphics, playerField);
+        }
+
         if (config.drawTransports()) {
             graphics.setColor(Color.WHITE);
             for (WorldPoint a : plugin.getTransports().keySet()) {
@@ -103,6 +129,57 @@ public class PathMapOverlay extends Overlay {
         drawOnMap(graphics, point, point.dx(1).dy(-1));
     }
 
+    /**
+     * Draws the route from the player to the hovered tile along the travel times, once they reach that far
+     */
+    private void drawHoveredRoute(Graphics2D graphics, DistanceField playerField) {
+        WorldPoint mapPoint = plugin.calculateMapPoint(client.getMouseCanvasPosition());
+        if (mapPoint == null) {
+            return;
+        }
+        int hovered = WorldPointUtil.packWorldPoint(mapPoint.getX(), mapPoint.getY(), client.getPlane());
+        if (playerField != routeField || hovered != routeTile || route == null) {
+            routeField = playerField;
+            routeTile = hovered;
+            route = playerField.getDistance(hovered) == DistanceField.UNREACHED ? null : playerField.getPath(hovered);
+        }
+        if (route == null) {
+            return;
+        }
+
+        graphics.setColor(config.colourHoveredRoute());
+        Stroke stroke = graphics.getStroke();
+        for (int i = 0; i < route.size(); i++) {
+            WorldPoint point = route.get(i);
+            fillOnMap(graphics, point);
+            if (i > 0 && point.distanceTo(route.get(i - 1)) > 1) {
+                Point start = plugin.mapWorldPointToGraphicsPoint(route.get(i - 1));
+                Point end = plugin.mapWorldPointToGraphicsPoint(point);
+                if (start != null && end != null) {
+                    graphics.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0));
+                    graphics.drawLine(start.getX(), start.getY(), end.getX(), end.getY());
+                    graphics.setStroke(stroke);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a tile on the map with the current colour
+     */
+    private void fillOnMap(Graphics2D graphics, WorldPoint point) {
+        Point start = plugin.mapWorldPointToGraphicsPoint(point);
+        Point end = plugin.mapWorldPointToGraphicsPoint(point.dx(1).dy(-1));
+
+        if (start == null || end == null) {
+            return;
+        }
+
+        final int width = end.getX() - start.getX();
+        final int height = end.getY() - start.getY();
+        graphics.fillRect(start.getX() - width / 2, start.getY() - height / 2, width, height);
+    }
+
     private void drawOnMap(Graphics2D graphics, WorldPoint point, WorldPoint offset) {
         Point start = plugin.mapWorldPointToGraphicsPoint(point);
         Point end = plugin.mapWorldPointToGraphicsPoint(offset);
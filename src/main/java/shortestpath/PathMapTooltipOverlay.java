@@ -18,6 +18,7 @@ import net.runelite.client.ui.overlay.Overlay;
 import net.runelite.client.ui.overlay.OverlayLayer;
 import net.runelite.client.ui.overlay.OverlayPosition;
 import net.runelite.client.ui.overlay.OverlayPriority;
+import shortestpath.pathfinder.DistanceField;
 
 public class PathMapTooltipOverlay extends Overlay {
     private static final int TOOLTIP_OFFSET_HEIGHT = 25;
@@ -25,6 +26,7 @@ public class PathMapTooltipOverlay extends Overlay {
     private static final int TOOLTIP_PADDING_HEIGHT = 1;
     private static final int TOOLTIP_PADDING_WIDTH = 2;
     private static final int TOOLTIP_TEXT_OFFSET_HEIGHT = -2;
+    private static final int MILLISECONDS_PER_TICK = 600;
 
     private final Client client;
     private final ShortestPathPlugin plugin;
@@ -47,20 +49,35 @@ public class PathMapTooltipOverlay extends Overlay {
             return null;
         }
 
+        Point cursorPos = client.getMouseCanvasPosition();
         if (plugin.getPathfinder() != null) {
             List<WorldPoint> path = plugin.getPathfinder().getPath();
-            Point cursorPos = client.getMouseCanvasPosition();
             for (int i = 0; i < path.size(); i++) {
-                if (drawTooltip(graphics, cursorPos, path.get(i), i + 1)) {
+                if (isHovered(cursorPos, path.get(i))) {
+                    drawTooltip(graphics, path.get(i), Arrays.asList("Shortest path:", "Step " + (i + 1) + " of " + path.size()));
                     return null;
                 }
             }
         }
 
+        DistanceField playerField = plugin.getPlayerField();
+        if (config.drawTravelTimes() && playerField != null) {
+            WorldPoint mapPoint = plugin.calculateMapPoint(cursorPos);
+            if (mapPoint != null) {
+                WorldPoint point = new WorldPoint(mapPoint.getX(), mapPoint.getY(), client.getPlane());
+                int ticks = playerField.getDistance(WorldPointUtil.packWorldPoint(point));
+                if (ticks != DistanceField.UNREACHED) {
+                    int seconds = ticks * MILLISECONDS_PER_TICK / 1000;
+                    drawTooltip(graphics, point, Arrays.asList("Travel time:",
+                        String.format("%d ticks (%d:%02d)", ticks, seconds / 60, seconds % 60)));
+                }
+            }
+        }
+
         return null;
     }
 
-    private boolean drawTooltip(Graphics2D graphics, Point cursorPos, WorldPoint point, int n) {
+    private boolean isHovered(Point cursorPos, WorldPoint point) {
         Point start = plugin.mapWorldPointToGraphicsPoint(point);
         Point end = plugin.mapWorldPointToGraphicsPoint(point.dx(1).dy(-1));
 
@@ -70,12 +87,15 @@ public class PathMapTooltipOverlay extends Overlay {
 
         int width = end.getX() - start.getX();
 
-        if (cursorPos.getX() < (start.getX() - width / 2) || cursorPos.getX() > (end.getX() - width / 2) ||
-            cursorPos.getY() < (start.getY() - width / 2) || cursorPos.getY() > (end.getY() - width / 2)) {
-            return false;
-        }
+        return cursorPos.getX() >= (start.getX() - width / 2) && cursorPos.getX() <= (end.getX() - width / 2) &&
+            cursorPos.getY() >= (start.getY() - width / 2) && cursorPos.getY() <= (end.getY() - width / 2);
+    }
 
-        List<String> rows = Arrays.asList("Shortest path:", "Step " + n + " of " + plugin.getPathfinder().getPath().size());
+    private void drawTooltip(Graphics2D graphics, WorldPoint point, List<String> rows) {
+        Point start = plugin.mapWorldPointToGraphicsPoint(point);
+        if (start == null) {
+            return;
+        }
 
         graphics.setFont(FontManager.getRunescapeFont());
         FontMetrics fm = graphics.getFontMetrics();
@@ -115,7 +135,5 @@ public class PathMapTooltipOverlay extends Overlay {
         for (int i = 0; i < rows.size(); i++) {
             graphics.drawString(rows.get(i), drawPointX, drawPointY + TOOLTIP_TEXT_OFFSET_HEIGHT + (i + 1) * tooltipHeight);
         }
-
-        return true;
     }
 }
@@ -191,6 +191,28 @@ public interface ShortestPathConfig extends Config {
         return 1;
     }
 
+    @ConfigItem(
+        keyName = "searchBothWays",
+        name = "Search from both ends",
+        description = "Whether to also search backwards from the target, which explores less of the map when neither end is near a transport",
+        position = 12,
+        section = sectionSettings
+    )
+    default boolean searchBothWays() {
+        return false;
+    }
+
+    @ConfigItem(
+        keyName = "jumpPointSearch",
+        name = "Jump over open ground",
+        description = "Whether to jump along straight and diagonal lines instead of visiting every tile, which explores less of open areas. Not used when searching from both ends",
+        position = 13,
+        section = sectionSettings
+    )
+    default boolean jumpPointSearch() {
+        return false;
+    }
+
     @ConfigSection(
         name = "Display",
         description = "Options for displaying the path on the world map, minimap and scene tiles",
@@ -264,10 +286,47 @@ public interface ShortestPathConfig extends Config {
         return TileStyle.TILES;
     }
 
+    @ConfigItem(
+        keyName = "drawTravelTimes",
+        name = "Show travel times",
+        description = "Whether hovering a tile on the world map shows the travel time and route to it from the player",
+        position = 19,
+        section = sectionDisplay
+    )
+    default boolean drawTravelTimes() {
+        return false;
+    }
+
+    @ConfigItem(
+        keyName = "drawReachableArea",
+        name = "Draw reachable area",
+        description = "Whether the tiles that can be reached within the travel time radius are drawn on the world map",
+        position = 20,
+        section = sectionDisplay
+    )
+    default boolean drawReachableArea() {
+        return false;
+    }
+
+    @Range(
+        min = 1,
+        max = 1000
+    )
+    @ConfigItem(
+        keyName = "travelTimeRadius",
+        name = "Travel time radius",
+        description = "The number of ticks from the player up to which travel times are found",
+        position = 21,
+        section = sectionDisplay
+    )
+    default int travelTimeRadius() {
+        return 100;
+    }
+
     @ConfigSection(
         name = "Colours",
         description = "Colours for the path map, minimap and scene tiles",
-        position = 19
+        position = 22
     )
     String sectionColours = "sectionColours";
 
@@ -276,7 +335,7 @@ public interface ShortestPathConfig extends Config {
         keyName = "colourPath",
         name = "Path",
         description = "Colour of the path tiles on the world map, minimap and in the game scene",
-        position = 20,
+        position = 23,
         section = sectionColours
     )
     default Color colourPath() {
@@ -288,7 +347,7 @@ public interface ShortestPathConfig extends Config {
         keyName = "colourPathCalculating",
         name = "Calculating",
         description = "Colour of the path tiles while the pathfinding calculation is in progress",
-        position = 21,
+        position = 24,
         section = sectionColours
     )
     default Color colourPathCalculating() {
@@ -300,7 +359,7 @@ public interface ShortestPathConfig extends Config {
         keyName = "colourTransports",
         name = "Transports",
         description = "Colour of the transport tiles",
-        position = 22,
+        position = 25,
         section = sectionColours
     )
     default Color colourTransports() {
@@ -312,10 +371,34 @@ public interface ShortestPathConfig extends Config {
         keyName = "colourCollisionMap",
         name = "Collision map",
         description = "Colour of the collision map tiles",
-        position = 23,
+        position = 26,
         section = sectionColours
     )
     default Color colourCollisionMap() {
         return new Color(0, 128, 255, 128);
     }
+
+    @Alpha
+    @ConfigItem(
+        keyName = "colourReachableArea",
+        name = "Reachable area",
+        description = "Colour of the tiles on the world map that can be reached within the travel time radius",
+        position = 27,
+        section = sectionColours
+    )
+    default Color colourReachableArea() {
+        return new Color(255, 255, 0, 48);
+    }
+
+    @Alpha
+    @ConfigItem(
+        keyName = "colourHoveredRoute",
+        name = "Hovered route",
+        description = "Colour of the route on the world map from the player to the tile hovered when showing travel times",
+        position = 28,
+        section = sectionColours
+    )
+    default Color colourHoveredRoute() {
+        return new Color(255, 128, 0, 192);
+    }
 }
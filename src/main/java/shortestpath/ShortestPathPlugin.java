@@ -9,6 +9,7 @@ import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.GameTick;
 import net.runelite.api.events.MenuEntryAdded;
 import net.runelite.api.events.MenuOpened;
+import net.runelite.api.events.StatChanged;
 import net.runelite.api.widgets.Widget;
 import net.runelite.api.widgets.WidgetInfo;
 import net.runelite.client.callback.ClientThread;
@@ -27,6 +28,7 @@ import net.runelite.client.util.ColorUtil;
 import net.runelite.client.util.ImageUtil;
 import net.runelite.client.util.Text;
 import shortestpath.pathfinder.CollisionMap;
+import shortestpath.pathfinder.DistanceField;
 import shortestpath.pathfinder.Pathfinder;
 import shortestpath.pathfinder.PathfinderConfig;
 
@@ -47,6 +49,8 @@ public class ShortestPathPlugin extends Plugin {
     private static final String ADD_START = "Add start";
     private static final String ADD_END = "Add end";
     private static final String CLEAR = "Clear";
+    private static final String FIND_NEAREST = "Find nearest";
+    private static final String FAIRY_RING = ColorUtil.wrapWithColorTag("Fairy ring", JagexColors.MENU_TARGET);
     private static final String PATH = ColorUtil.wrapWithColorTag("Path", JagexColors.MENU_TARGET);
     private static final String SET = "Set";
     private static final String START = ColorUtil.wrapWithColorTag("Start", JagexColors.MENU_TARGET);
@@ -90,7 +94,7 @@ public class ShortestPathPlugin extends Plugin {
     private WorldMapOverlay worldMapOverlay;
 
     private Point lastMenuOpenedPoint;
-    private WorldMapPoint marker;
+    private final List<WorldMapPoint> markers = new ArrayList<>();
     private WorldPoint transportStart;
     private WorldPoint lastLocation = new WorldPoint(0, 0, 0);
     private MenuEntry lastClick;
@@ -130,6 +134,9 @@ public class ShortestPathPlugin extends Plugin {
         overlayManager.remove(pathMinimapOverlay);
         overlayManager.remove(pathMapOverlay);
         overlayManager.remove(pathMapTooltipOverlay);
+
+        setPathfinder(null);
+        pathfinderConfig.shutDown();
     }
 
     @Subscribe
@@ -143,13 +150,62 @@ public class ShortestPathPlugin extends Plugin {
             "useFairyRings".equals(event.getKey()) || "useTeleports".equals(event.getKey()) ||
             "useCanoes".equals(event.getKey()) || "useArdyCloak".equals(event.getKey());
 
-        if (reloadTransports) {
-            Map<WorldPoint, List<Transport>> transports = Transport.fromResources(config);
-            pathfinderConfig.getTransports().clear();
-            pathfinderConfig.getTransports().putAll(transports);
+        Map<WorldPoint, List<Transport>> transports = reloadTransports ? Transport.fromResources(config) : null;
+        if (reloadTransports || "avoidWilderness".equals(event.getKey())) {
+            clientThread.invoke(() -> {
+                if (transports != null) {
+                    pathfinderConfig.setTransports(transports);
+                }
+                pathfinderConfig.refresh();
+                recalculatePath();
+            });
+        }
+    }
+
+    @Subscribe
+    public void onStatChanged(StatChanged event) {
+        boolean searched = pathfinder != null && pathfinder.isDone();
+        if ((!searched && pathfinderConfig.getPlayerField() == null) ||
+            !pathfinderConfig.affectsTransports(event.getSkill(), event.getBoostedLevel())) {
+            return;
+        }
+
+        pathfinderConfig.refresh();
+        if (searched && !pathfinderConfig.getUsableTransports().equals(pathfinder.getTransports())) {
+            recalculatePath();
         }
     }
 
+    /**
+     * Keeps the travel times from the player up to date while the world map showing them is open
+     */
+    private void refreshPlayerField(Player localPlayer) {
+        boolean shown = (config.drawTravelTimes() || config.drawReachableArea()) &&
+            client.getWidget(WidgetInfo.WORLD_MAP_VIEW) != null;
+        if (shown && localPlayer != null) {
+            pathfinderConfig.refreshPlayerField(localPlayer.getWorldLocation(), config.travelTimeRadius());
+        } else {
+            pathfinderConfig.clearPlayerField();
+        }
+    }
+
+    public DistanceField getPlayerField() {
+        return pathfinderConfig.getPlayerField();
+    }
+
+    /**
+     * Searches again towards the target after the transports that may be used changed, which repairs
+     * the travel times kept from the previous search rather than starting over
+     */
+    private void recalculatePath() {
+        Player localPlayer = client.getLocalPlayer();
+        if (pathfinder == null || (!startPointSet && localPlayer == null)) {
+            return;
+        }
+        WorldPoint start = startPointSet ? pathfinder.getStart() : localPlayer.getWorldLocation();
+        setPathfinder(new Pathfinder(pathfinderConfig, start, pathfinder.getTargets()));
+    }
+
     public boolean isNearPath(WorldPoint location) {
         if (pathfinder == null || pathfinder.getPath() == null || pathfinder.getPath().isEmpty() ||
             config.recalculateDistance() < 0 || lastLocation.equals(lastLocation = location)) {
@@ -173,6 +229,7 @@ public class ShortestPathPlugin extends Plugin {
     @Subscribe
     public void onGameTick(GameTick tick) {
         Player localPlayer = client.getLocalPlayer();
+        refreshPlayerField(localPlayer);
         if (localPlayer == null || pathfinder == null) {
             return;
         }
@@ -188,7 +245,7 @@ public class ShortestPathPlugin extends Plugin {
                 setTarget(null);
                 return;
             }
-            pathfinder = new Pathfinder(pathfinderConfig, currentLocation, pathfinder.getTarget());
+            setPathfinder(new Pathfinder(pathfinderConfig, currentLocation, pathfinder.getTargets()));
         }
     }
 
@@ -222,6 +279,9 @@ public class ShortestPathPlugin extends Plugin {
 
         if (map != null && map.getBounds().contains(client.getMouseCanvasPosition().getX(), client.getMouseCanvasPosition().getY())) {
             addMenuEntry(event, SET, TARGET, 0);
+            if (config.useFairyRings()) {
+                addMenuEntry(event, FIND_NEAREST, FAIRY_RING, 0);
+            }
             if (pathfinder != null) {
                 if (pathfinder.getTarget() != null) {
                     addMenuEntry(event, SET, START, 0);
@@ -284,6 +344,10 @@ public class ShortestPathPlugin extends Plugin {
             setTarget(getSelectedWorldPoint());
         }
 
+        if (entry.getOption().equals(FIND_NEAREST) && entry.getTarget().equals(FAIRY_RING)) {
+            setTargets(getFairyRings());
+        }
+
         if (entry.getOption().equals(SET) && entry.getTarget().equals(START)) {
             setStart(getSelectedWorldPoint());
         }
@@ -320,9 +384,9 @@ public class ShortestPathPlugin extends Plugin {
 
     private boolean playerHasItem(int[] items) {
         ItemContainer inventory = client.getItemContainer(InventoryID.INVENTORY);
-        Item[] inventoryItems = inventory.getItems();
+        Item[] inventoryItems = inventory != null ? inventory.getItems() : new Item[0];
         ItemContainer equipment = client.getItemContainer(InventoryID.EQUIPMENT);
-        Item[] equipmentItems = equipment.getItems();
+        Item[] equipmentItems = equipment != null ? equipment.getItems() : new Item[0];
         for (Item item : equipmentItems)
         {
             int itemId = item.getId();
@@ -342,40 +406,55 @@ public class ShortestPathPlugin extends Plugin {
         return false;
     }
 
+    /**
+     * The tiles of the fairy rings, which a path can be found to the nearest of
+     */
+    private Set<WorldPoint> getFairyRings() {
+        Set<WorldPoint> fairyRings = new HashSet<>();
+        for (List<Transport> transports : pathfinderConfig.getTransports().values()) {
+            for (Transport transport : transports) {
+                if (transport.isFairyRing()) {
+                    fairyRings.add(transport.getOrigin());
+                }
+            }
+        }
+        return fairyRings;
+    }
+
     public void setTarget(WorldPoint target) {
+        setTargets(target == null ? Collections.emptyList() : Collections.singletonList(target));
+    }
+
+    /**
+     * Finds a path to whichever of the targets is quickest to reach, or clears the path if there are none
+     */
+    public void setTargets(Collection<WorldPoint> targets) {
         Player localPlayer = client.getLocalPlayer();
-        WorldPoint playerLocation = localPlayer.getWorldLocation();
         if (!startPointSet && localPlayer == null) {
             return;
         }
         pathfinderConfig.refresh();
-        pathfinderConfig.getTemporaryTransports().clear();
-        if (config.useArdyCloak()) {
-            if (!config.checkArdyCloak() || playerHasArdyCloak())
-            {
-                Transport transport = new Transport(playerLocation, new WorldPoint(2607, 3221, 0), Transport.TransportType.ARDY_CLOAK);
-                pathfinderConfig.getTemporaryTransports().computeIfAbsent(playerLocation, k -> new ArrayList<>()).add(transport);
-            }
-        }
 
-        if (target == null) {
-            worldMapPointManager.remove(marker);
-            marker = null;
-            pathfinder = null;
+        worldMapPointManager.removeIf(markers::contains);
+        markers.clear();
+        if (targets.isEmpty()) {
+            setPathfinder(null);
             startPointSet = false;
         } else {
-            worldMapPointManager.removeIf(x -> x == marker);
-            marker = new WorldMapPoint(target, MARKER_IMAGE);
-            marker.setName("Target");
-            marker.setTarget(marker.getWorldPoint());
-            marker.setJumpOnClick(true);
-            worldMapPointManager.add(marker);
+            for (WorldPoint target : targets) {
+                WorldMapPoint marker = new WorldMapPoint(target, MARKER_IMAGE);
+                marker.setName("Target");
+                marker.setTarget(marker.getWorldPoint());
+                marker.setJumpOnClick(true);
+                worldMapPointManager.add(marker);
+                markers.add(marker);
+            }
 
             WorldPoint start = localPlayer.getWorldLocation();
             if (startPointSet && pathfinder != null) {
                 start = pathfinder.getStart();
             }
-            pathfinder = new Pathfinder(pathfinderConfig, start, target);
+            setPathfinder(new Pathfinder(pathfinderConfig, start, targets));
         }
     }
 
@@ -384,7 +463,17 @@ public class ShortestPathPlugin extends Plugin {
             return;
         }
         startPointSet = true;
-        pathfinder = new Pathfinder(pathfinderConfig, start, pathfinder.getTarget());
+        setPathfinder(new Pathfinder(pathfinderConfig, start, pathfinder.getTargets()));
+    }
+
+    /**
+     * Replaces the current search, cancelling it so that it does not hold up the new one
+     */
+    private void setPathfinder(Pathfinder next) {
+        if (pathfinder != null) {
+            pathfinder.cancel();
+        }
+        pathfinder = next;
     }
 
     public WorldPoint calculateMapPoint(Point point) {
@@ -4,6 +4,8 @@ import com.google.common.base.Strings;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,7 +19,7 @@ import net.runelite.api.coords.WorldPoint;
  * This class represents a travel point between two WorldPoints.
  */
 public class Transport {
-    /** The starting point of this transport */
+    /** The starting point of this transport, or null for a teleport that can be used from anywhere */
     @Getter
     private final WorldPoint origin;
 
@@ -25,36 +27,37 @@ public class Transport {
     @Getter
     private final WorldPoint destination;
 
-    /** The skill levels required to use this transport */
-    private final int[] skillLevels = new int[Skill.values().length];
+    /** The transport is an agility shortcut */
+    public static final int AGILITY_SHORTCUT = 1;
+    /** The transport is a crossbow grapple shortcut */
+    public static final int GRAPPLE_SHORTCUT = 1 << 1;
+    /** The transport is a boat */
+    public static final int BOAT = 1 << 2;
+    /** The transport is a canoe, which is also a boat */
+    public static final int CANOE = 1 << 3;
+    /** The transport is a fairy ring */
+    public static final int FAIRY_RING = 1 << 4;
+    /** The transport is a teleport */
+    public static final int TELEPORT = 1 << 5;
+    /** The transport is the Ardougne cloak teleport */
+    public static final int ARDY_CLOAK = 1 << 6;
+
+    private static final Skill[] SKILLS = Skill.values();
+    private static final int[] NO_REQUIREMENTS = new int[0];
+    /** The teleports that can be used from anywhere, which have no origin */
+    private static final List<Transport> GLOBAL_TELEPORTS = Collections.singletonList(
+        new Transport(new WorldPoint(2607, 3221, 0), TransportType.ARDY_CLOAK, 30));
+
+    /** The skill levels required to use this transport, as pairs of skill ordinal and level */
+    private int[] requirements = NO_REQUIREMENTS;
 
     /** The quest required to use this transport */
     @Getter
     private Quest quest;
 
-    /** Whether the transport is an agility shortcut */
-    @Getter
-    private boolean isAgilityShortcut;
-
-    /** Whether the transport is a crossbow grapple shortcut */
-    @Getter
-    private boolean isGrappleShortcut;
-
-    /** Whether the transport is a boat */
-    @Getter
-    private boolean isBoat;
-
-    /** Whether the transport is a fairy ring */
-    @Getter
-    private boolean isFairyRing;
-
-    /** Whether the transport is a teleport */
+    /** The kinds of transport this is, as a mask of the category bits above */
     @Getter
-    private boolean isTeleport;
-
-    /** Whether the transport is ardyCloak */
-    @Getter
-    private boolean isArdyClock;
+    private int categories;
 
     /** The additional travel time */
     @Getter
@@ -67,24 +70,34 @@ public class Transport {
 
     Transport(final WorldPoint origin, final WorldPoint destination, final boolean isFairyRing) {
         this(origin, destination);
-        this.isFairyRing = isFairyRing;
+        this.categories = isFairyRing ? FAIRY_RING : 0;
     }
 
     Transport(final WorldPoint origin, final WorldPoint destination, final TransportType type) {
         this.origin = origin;
         this.destination = destination;
         switch (type) {
-            case TRANSPORT:
-            case TELEPORT:
-                this.isTeleport = true;
             case BOAT:
-                this.isBoat = true;
+                this.categories = BOAT;
+                break;
             case FAIRY_RING:
-                this.isFairyRing = true;
+                this.categories = FAIRY_RING;
+                break;
+            case TELEPORT:
+                this.categories = TELEPORT;
+                break;
             case ARDY_CLOAK:
-                this.isArdyClock = true;
+                this.categories = ARDY_CLOAK;
+                break;
         }
+    }
 
+    /**
+     * A teleport that can be used from anywhere
+     */
+    private Transport(final WorldPoint destination, final TransportType type, final int wait) {
+        this(null, destination, type);
+        this.wait = wait;
     }
 
     Transport(final String line) {
@@ -107,6 +120,8 @@ public class Transport {
         // Skill requirements
         if (parts.length >= 4 && !parts[3].isEmpty()) {
             String[] skillRequirements = parts[3].split(";");
+            requirements = new int[skillRequirements.length * 2];
+            int length = 0;
 
             for (String requirement : skillRequirements) {
                 String[] levelAndSkill = requirement.split(DELIM);
@@ -114,14 +129,15 @@ public class Transport {
                 int level = Integer.parseInt(levelAndSkill[0]);
                 String skillName = levelAndSkill[1];
 
-                Skill[] skills = Skill.values();
-                for (int i = 0; i < skills.length; i++) {
-                    if (skills[i].getName().equals(skillName)) {
-                        skillLevels[i] = level;
+                for (Skill skill : SKILLS) {
+                    if (skill.getName().equals(skillName)) {
+                        requirements[length++] = skill.ordinal();
+                        requirements[length++] = level;
                         break;
                     }
                 }
             }
+            requirements = Arrays.copyOf(requirements, length);
         }
 
         // Quest requirements
@@ -134,13 +150,87 @@ public class Transport {
             this.wait = Integer.parseInt(parts[6]);
         }
 
-        isAgilityShortcut = getRequiredLevel(Skill.AGILITY) > 1;
-        isGrappleShortcut = isAgilityShortcut && (getRequiredLevel(Skill.RANGED) > 1 || getRequiredLevel(Skill.STRENGTH) > 1);
+        if (getRequiredLevel(Skill.AGILITY) > 1) {
+            categories |= AGILITY_SHORTCUT;
+            if (getRequiredLevel(Skill.RANGED) > 1 || getRequiredLevel(Skill.STRENGTH) > 1) {
+                categories |= GRAPPLE_SHORTCUT;
+            }
+        }
     }
 
     /** The skill level required to use this transport */
     public int getRequiredLevel(Skill skill) {
-        return skillLevels[skill.ordinal()];
+        for (int i = 0; i < requirements.length; i += 2) {
+            if (requirements[i] == skill.ordinal()) {
+                return requirements[i + 1];
+            }
+        }
+        return 0;
+    }
+
+    /** The skills this transport requires a level in */
+    public List<Skill> getRequiredSkills() {
+        List<Skill> skills = new ArrayList<>(requirements.length / 2);
+        for (int i = 0; i < requirements.length; i += 2) {
+            skills.add(SKILLS[requirements[i]]);
+        }
+        return skills;
+    }
+
+    /**
+     * Whether skill levels, indexed by skill ordinal, meet every skill requirement of this transport
+     */
+    public boolean hasRequiredLevels(int[] levels) {
+        for (int i = 0; i < requirements.length; i += 2) {
+            if (levels[requirements[i]] < requirements[i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether the transport is an agility shortcut */
+    public boolean isAgilityShortcut() {
+        return (categories & AGILITY_SHORTCUT) != 0;
+    }
+
+    /** Whether the transport is a crossbow grapple shortcut */
+    public boolean isGrappleShortcut() {
+        return (categories & GRAPPLE_SHORTCUT) != 0;
+    }
+
+    /** Whether the transport is a boat */
+    public boolean isBoat() {
+        return (categories & BOAT) != 0;
+    }
+
+    /** Whether the transport is a fairy ring */
+    public boolean isFairyRing() {
+        return (categories & FAIRY_RING) != 0;
+    }
+
+    /** Whether the transport is a teleport */
+    public boolean isTeleport() {
+        return (categories & TELEPORT) != 0;
+    }
+
+    /**
+     * The teleports that can be used from anywhere, whatever their requirements
+     */
+    public static List<Transport> getGlobalTeleports() {
+        return GLOBAL_TELEPORTS;
+    }
+
+    /**
+     * This teleport used from a tile, as a transport with the same requirements starting there
+     */
+    public Transport from(WorldPoint origin) {
+        Transport transport = new Transport(origin, destination);
+        transport.requirements = requirements;
+        transport.quest = quest;
+        transport.categories = categories;
+        transport.wait = wait;
+        return transport;
     }
 
     /** Whether the transport has a quest requirement */
@@ -176,12 +266,15 @@ public class Transport {
                     fairyRingsQuestNames.add(p.length >= 7 ? p[6] : "");
                 } else {
                     Transport transport = new Transport(line);
-                    transport.isBoat = TransportType.BOAT.equals(transportType);
-                    transport.isTeleport = TransportType.TELEPORT.equals(transportType);
-                    if (!config.useAgilityShortcuts() && transport.isAgilityShortcut) {
+                    if (TransportType.BOAT.equals(transportType)) {
+                        transport.categories |= transport.getRequiredLevel(Skill.WOODCUTTING) > 1 ? BOAT | CANOE : BOAT;
+                    } else if (TransportType.TELEPORT.equals(transportType)) {
+                        transport.categories |= TELEPORT;
+                    }
+                    if (!config.useAgilityShortcuts() && transport.isAgilityShortcut()) {
                         continue;
                     }
-                    if (!config.useGrappleShortcuts() && transport.isGrappleShortcut) {
+                    if (!config.useGrappleShortcuts() && transport.isGrappleShortcut()) {
                         continue;
                     }
                     WorldPoint origin = transport.getOrigin();
@@ -0,0 +1,56 @@
+package shortestpath;
+
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * Packs world coordinates into a single int: 15 bits for x, 15 bits for y and 2 bits for the plane.
+ */
+public class WorldPointUtil {
+    public static final int UNDEFINED = -1;
+
+    public static int packWorldPoint(WorldPoint point) {
+        if (point == null) {
+            return UNDEFINED;
+        }
+        return packWorldPoint(point.getX(), point.getY(), point.getPlane());
+    }
+
+    public static int packWorldPoint(int x, int y, int plane) {
+        return (x & 0x7FFF) | ((y & 0x7FFF) << 15) | ((plane & 0x3) << 30);
+    }
+
+    public static WorldPoint unpackWorldPoint(int packedPoint) {
+        if (packedPoint == UNDEFINED) {
+            return null;
+        }
+        return new WorldPoint(unpackWorldX(packedPoint), unpackWorldY(packedPoint), unpackWorldPlane(packedPoint));
+    }
+
+    public static int unpackWorldX(int packedPoint) {
+        return packedPoint & 0x7FFF;
+    }
+
+    public static int unpackWorldY(int packedPoint) {
+        return (packedPoint >> 15) & 0x7FFF;
+    }
+
+    public static int unpackWorldPlane(int packedPoint) {
+        return (packedPoint >> 30) & 0x3;
+    }
+
+    /**
+     * The Chebyshev distance between two packed points, or {@link Integer#MAX_VALUE} when they are on different planes
+     */
+    public static int distanceBetween(int previousPacked, int currentPacked) {
+        if (unpackWorldPlane(previousPacked) != unpackWorldPlane(currentPacked)) {
+            return Integer.MAX_VALUE;
+        }
+        return distanceBetween2D(previousPacked, currentPacked);
+    }
+
+    public static int distanceBetween2D(int previousPacked, int currentPacked) {
+        return Math.max(
+            Math.abs(unpackWorldX(previousPacked) - unpackWorldX(currentPacked)),
+            Math.abs(unpackWorldY(previousPacked) - unpackWorldY(currentPacked)));
+    }
+}
@@ -1,20 +1,60 @@
 package shortestpath.pathfinder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import net.runelite.api.coords.WorldPoint;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 import shortestpath.ShortestPathPlugin;
 import shortestpath.Util;
+import shortestpath.WorldPointUtil;
 
+@Slf4j
 public class CollisionMap extends SplitFlagMap {
-    public CollisionMap(int regionSize, Map<Position, byte[]> compressedRegions) {
-        super(regionSize, compressedRegions, 2);
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+    private static final int REGION_SIZE = 64;
+    private static final int FLAG_COUNT = 2;
+    private static final File MAP_FILE = new File(new File(RuneLite.RUNELITE_DIR, "shortest-path"), "collision-map.dat");
+    /** The direction a tile was arrived at from, when it was not walked to, such as the start or a transport destination */
+    public static final int NO_DIRECTION = -1;
+    /** Set in a jump layer entry when the jump ends at a jump point, rather than where the way ends */
+    public static final int JUMP_POINT = 0x80;
+    /** The steps of a jump layer entry */
+    public static final int JUMP_DISTANCE = 0x7F;
+    /** The direction of each step between neighbouring tiles, by x and then y offset plus one */
+    private static final int[][] STEP_DIRECTIONS = new int[3][3];
+
+    static {
+        for (OrdinalDirection direction : DIRECTIONS) {
+            STEP_DIRECTIONS[direction.x + 1][direction.y + 1] = direction.ordinal();
+        }
+    }
+
+    /** The tiles jumps stop at besides those the flags make jump points, replaced rather than changed */
+    private volatile VisitedTiles forcedJumpPoints = new VisitedTiles();
+    private Set<Integer> forcedJumpPointSet = new HashSet<>();
+
+    public CollisionMap(ByteBuffer data) {
+        super(data);
     }
 
     public boolean n(int x, int y, int z) {
@@ -33,83 +73,557 @@ public class CollisionMap extends SplitFlagMap {
         return e(x - 1, y, z);
     }
 
-    private boolean ne(int x, int y, int z) {
-        return n(x, y, z) && e(x, y + 1, z) && e(x, y, z) && n(x + 1, y, z);
+    public boolean isBlocked(int x, int y, int z) {
+        return !n(x, y, z) && !s(x, y, z) && !e(x, y, z) && !w(x, y, z);
+    }
+
+    /**
+     * The directions that can be walked in from a tile, as a bitmask indexed by {@link OrdinalDirection#ordinal()}
+     */
+    public int getTraversable(int x, int y, int z) {
+        if (z < 0 || z >= FlagMap.PLANE_COUNT) {
+            return 0;
+        }
+        FlagMap region = getRegion(x, y);
+        return getTraversableLayer(region)[region.tileIndex(x, y, z)] & 0xFF;
     }
 
-    private boolean nw(int x, int y, int z) {
-        return n(x, y, z) && w(x, y + 1, z) && w(x, y, z) && n(x - 1, y, z);
+    /**
+     * The traversal masks of every tile of the region containing a tile, indexed by {@link FlagMap#tileIndex}
+     */
+    byte[] getTraversableLayer(int x, int y) {
+        return getTraversableLayer(getRegion(x, y));
     }
 
-    private boolean se(int x, int y, int z) {
-        return s(x, y, z) && e(x, y - 1, z) && e(x, y, z) && s(x + 1, y, z);
+    private byte[] getTraversableLayer(FlagMap region) {
+        byte[] layer = region.tileLayer;
+        if (layer == null) {
+            layer = region.tileLayer = computeTraversable(region);
+        }
+        return layer;
     }
 
-    private boolean sw(int x, int y, int z) {
-        return s(x, y, z) && w(x, y - 1, z) && w(x, y, z) && s(x - 1, y, z);
+    /**
+     * Writes the packed positions of the tiles that can be walked to from a tile into a caller-supplied buffer
+     * @param packedPosition  the packed position to walk from
+     * @param neighbors  a buffer of at least 8 elements
+     * @return  the number of neighbors written
+     */
+    public int getNeighbors(int packedPosition, int[] neighbors) {
+        int x = WorldPointUtil.unpackWorldX(packedPosition);
+        int y = WorldPointUtil.unpackWorldY(packedPosition);
+        int z = WorldPointUtil.unpackWorldPlane(packedPosition);
+        int traversable = getTraversable(x, y, z);
+        int count = 0;
+        for (int i = 0; traversable != 0; i++, traversable >>>= 1) {
+            if ((traversable & 1) != 0) {
+                OrdinalDirection direction = DIRECTIONS[i];
+                neighbors[count++] = WorldPointUtil.packWorldPoint(x + direction.x, y + direction.y, z);
+            }
+        }
+        return count;
     }
 
-    public boolean isBlocked(int x, int y, int z) {
-        return !n(x, y, z) && !s(x, y, z) && !e(x, y, z) && !w(x, y, z);
+    /**
+     * The jump layer entry of a tile for a direction: the steps a jump from the tile takes, with {@link #JUMP_POINT}
+     * set if it ends at a jump point. A jump follows the direction until a tile that a quickest path could turn at,
+     * or for a diagonal direction a tile that a jump along either of its parts stops at. Jumps stay within the region
+     * of the tile, so one that ends without a jump point either meets a wall or the region border, which can be told
+     * apart by whether the direction can still be walked in.
+     * @param direction  the {@link OrdinalDirection#ordinal()} to jump in
+     */
+    public int getJump(int x, int y, int z, int direction) {
+        if (z < 0 || z >= FlagMap.PLANE_COUNT) {
+            return 0;
+        }
+        FlagMap region = getRegion(x, y);
+        return getJumpLayer(region, z)[region.tileIndex(x, y, 0) * DIRECTIONS.length + direction] & 0xFF;
+    }
+
+    /**
+     * The directions that a quickest path arriving at a tile could go on in, as a bitmask like
+     * {@link #getTraversable}. A way on is left out when the tile before could get to the same tile as quickly
+     * without this one, by a single step or by two steps that come first in the order quickest paths are kept to:
+     * fewer diagonal steps first, and then diagonal before straight steps.
+     * @param arrival  the direction the tile was walked to in, or {@link #NO_DIRECTION}
+     */
+    public int getCanonicalMoves(int x, int y, int z, int arrival) {
+        return canonicalMoves((tileX, tileY) -> getTraversable(tileX, tileY, z), x, y, arrival);
+    }
+
+    /**
+     * Whether a tile has been made a jump point by {@link #setForcedJumpPoints}
+     */
+    public boolean isForcedJumpPoint(int packedPoint) {
+        return forcedJumpPoints.get(packedPoint);
+    }
+
+    /**
+     * Sets the tiles that jumps stop at besides the jump points the flags make, such as the tiles transports are
+     * used from. Only the jump layers of the regions where they changed are dropped, to be computed again.
+     */
+    public void setForcedJumpPoints(Collection<Integer> packedPoints) {
+        Set<Integer> tiles = new HashSet<>(packedPoints);
+        VisitedTiles forced = new VisitedTiles();
+        tiles.forEach(forced::add);
+
+        Set<Integer> changedRegions = new HashSet<>();
+        synchronized (this) {
+            for (int tile : tiles) {
+                if (!forcedJumpPointSet.contains(tile)) {
+                    changedRegions.add(regionKey(tile));
+                }
+            }
+            for (int tile : forcedJumpPointSet) {
+                if (!tiles.contains(tile)) {
+                    changedRegions.add(regionKey(tile));
+                }
+            }
+            forcedJumpPointSet = tiles;
+            // a layer computed meanwhile from the previous tiles is computed again, see getJumpLayer
+            forcedJumpPoints = forced;
+        }
+        for (int key : changedRegions) {
+            FlagMap region = getLoadedRegion(key >>> 16, key & 0xFFFF);
+            if (region != null) {
+                dropJumpLayers(region);
+            }
+        }
+    }
+
+    /**
+     * Drops the layers derived from the flags of a region, to be computed again after the flags have been
+     * changed. The layers of the regions around it are dropped as well, as they take in the tiles along its border.
+     */
+    public void invalidateRegion(int regionX, int regionY) {
+        for (int x = regionX - 1; x <= regionX + 1; x++) {
+            for (int y = regionY - 1; y <= regionY + 1; y++) {
+                FlagMap region = getLoadedRegion(x, y);
+                if (region != null) {
+                    region.tileLayer = null;
+                    dropJumpLayers(region);
+                }
+            }
+        }
+    }
+
+    private int regionKey(int packedPoint) {
+        return (WorldPointUtil.unpackWorldX(packedPoint) / getRegionSize()) << 16 |
+            WorldPointUtil.unpackWorldY(packedPoint) / getRegionSize();
+    }
+
+    private byte[] getJumpLayer(FlagMap region, int z) {
+        byte[] layer = region.jumpLayers[z];
+        while (layer == null) {
+            VisitedTiles forced = forcedJumpPoints;
+            layer = attachJumpLayer(region, z, computeJumpLayer(region, z, forced));
+            if (forced != forcedJumpPoints) {
+                dropJumpLayers(region);
+                layer = null;
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * Works out the jump layer of a plane of a region, a direction at a time. Each entry takes the entry of the tile
+     * it steps to, so the tiles are visited from the far side, and the straight directions come before the diagonal ones.
+     * Only the planes searched on are worked out, as most regions are walked on one plane only.
+     */
+    private byte[] computeJumpLayer(FlagMap region, int z, VisitedTiles forced) {
+        byte[] layer = new byte[region.tileCount() / FlagMap.PLANE_COUNT * DIRECTIONS.length];
+        TraversalWindow masks = new TraversalWindow(region, z);
+        if (masks.isEmpty()) {
+            return layer;
+        }
+        for (OrdinalDirection direction : DIRECTIONS) {
+            int d = direction.ordinal();
+            for (int i = 0; i <= region.maxY - region.minY; i++) {
+                int y = direction.y > 0 ? region.maxY - i : region.minY + i;
+                for (int j = 0; j <= region.maxX - region.minX; j++) {
+                    int x = direction.x > 0 ? region.maxX - j : region.minX + j;
+                    layer[region.tileIndex(x, y, 0) * DIRECTIONS.length + d] =
+                        (byte) jumpEntry(region, layer, masks, forced, x, y, z, direction);
+                }
+            }
+        }
+        return layer;
+    }
+
+    private int jumpEntry(FlagMap region, byte[] layer, TraversalWindow masks, VisitedTiles forced,
+                          int x, int y, int z, OrdinalDirection direction) {
+        int d = direction.ordinal();
+        int nextX = x + direction.x;
+        int nextY = y + direction.y;
+        if ((masks.get(x, y) & (1 << d)) == 0 ||
+            nextX < region.minX || nextX > region.maxX || nextY < region.minY || nextY > region.maxY) {
+            return 0;
+        }
+        if (isJumpPoint(region, layer, masks, forced, nextX, nextY, z, d)) {
+            return 1 | JUMP_POINT;
+        }
+        int next = layer[region.tileIndex(nextX, nextY, 0) * DIRECTIONS.length + d];
+        return ((next & JUMP_DISTANCE) + 1) | (next & JUMP_POINT);
+    }
+
+    private boolean isJumpPoint(FlagMap region, byte[] layer, TraversalWindow masks, VisitedTiles forced,
+                                int x, int y, int z, int arrival) {
+        if (forced.get(WorldPointUtil.packWorldPoint(x, y, z)) ||
+            (canonicalMoves(masks, x, y, arrival) & ~naturalMoves(arrival)) != 0) {
+            return true;
+        }
+        if (!isDiagonal(arrival)) {
+            return false;
+        }
+        OrdinalDirection direction = DIRECTIONS[arrival];
+        return endsAtStop(region, layer, masks, x, y, z, STEP_DIRECTIONS[direction.x + 1][1]) ||
+            endsAtStop(region, layer, masks, x, y, z, STEP_DIRECTIONS[1][direction.y + 1]);
+    }
+
+    /**
+     * Whether a straight jump from a tile stops somewhere, at a jump point or at the region border where a jump
+     * could go on to one in the next region, rather than at a wall
+     */
+    private boolean endsAtStop(FlagMap region, byte[] layer, TraversalWindow masks, int x, int y, int z, int d) {
+        int jump = layer[region.tileIndex(x, y, 0) * DIRECTIONS.length + d];
+        if ((jump & JUMP_POINT) != 0) {
+            return true;
+        }
+        int steps = jump & JUMP_DISTANCE;
+        return (masks.get(x + DIRECTIONS[d].x * steps, y + DIRECTIONS[d].y * steps) & (1 << d)) != 0;
     }
 
-    public List<WorldPoint> getNeighbors(WorldPoint position) {
-        int x = position.getX();
-        int y = position.getY();
-        int z = position.getPlane();
-
-        List<WorldPoint> neighbors = new ArrayList<>();
-        boolean[] traversable;
-        if (isBlocked(x, y, z)) {
-            boolean westBlocked = isBlocked(x - 1, y, z);
-            boolean eastBlocked = isBlocked(x + 1, y, z);
-            boolean southBlocked = isBlocked(x, y - 1, z);
-            boolean northBlocked = isBlocked(x, y + 1, z);
-            boolean southWestBlocked = isBlocked(x - 1, y - 1, z);
-            boolean southEastBlocked = isBlocked(x + 1, y - 1, z);
-            boolean northWestBlocked = isBlocked(x - 1, y + 1, z);
-            boolean northEastBlocked = isBlocked(x + 1, y + 1, z);
-            traversable = new boolean[] {
-                !westBlocked,
-                !eastBlocked,
-                !southBlocked,
-                !northBlocked,
-                !southWestBlocked && !westBlocked && !southBlocked,
-                !southEastBlocked && !eastBlocked && !southBlocked,
-                !northWestBlocked && !westBlocked && !northBlocked,
-                !northEastBlocked && !eastBlocked && !northBlocked
-            };
-        } else {
-            traversable = new boolean[] {
-                w(x, y, z), e(x, y, z), s(x, y, z), n(x, y, z), sw(x, y, z), se(x, y, z), nw(x, y, z), ne(x, y, z)
-            };
-        }
-
-        for (int i = 0; i < traversable.length; i++) {
-            if (traversable[i]) {
-                OrdinalDirection direction = OrdinalDirection.values()[i];
-                neighbors.add(position.dx(direction.x).dy(direction.y));
-            }
-        }
-
-        return neighbors;
+    private static boolean isDiagonal(int direction) {
+        return DIRECTIONS[direction].x != 0 && DIRECTIONS[direction].y != 0;
     }
 
+    /**
+     * The ways on from a tile that quickest paths arriving in a direction take without any walls around: straight on,
+     * and after a diagonal step also either of its parts
+     */
+    private static int naturalMoves(int arrival) {
+        if (!isDiagonal(arrival)) {
+            return 1 << arrival;
+        }
+        OrdinalDirection direction = DIRECTIONS[arrival];
+        return 1 << arrival | 1 << STEP_DIRECTIONS[direction.x + 1][1] | 1 << STEP_DIRECTIONS[1][direction.y + 1];
+    }
+
+    private static int canonicalMoves(TraversalMasks masks, int x, int y, int arrival) {
+        int moves = masks.get(x, y);
+        if (arrival == NO_DIRECTION) {
+            return moves;
+        }
+        int parentX = x - DIRECTIONS[arrival].x;
+        int parentY = y - DIRECTIONS[arrival].y;
+        int canonical = 0;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if ((moves & (1 << d)) != 0 &&
+                !hasEarlierWay(masks, parentX, parentY, x, y, x + DIRECTIONS[d].x, y + DIRECTIONS[d].y, order(arrival, d))) {
+                canonical |= 1 << d;
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Whether a tile next to the one after the parent can be got to from the parent without it, in a single step or
+     * in two steps that come before the steps through it
+     */
+    private static boolean hasEarlierWay(TraversalMasks masks, int parentX, int parentY, int x, int y,
+                                         int targetX, int targetY, int order) {
+        int fromParent = masks.get(parentX, parentY);
+        int offsetX = targetX - parentX;
+        int offsetY = targetY - parentY;
+        if (offsetX == 0 && offsetY == 0) {
+            return true;
+        }
+        if (Math.abs(offsetX) <= 1 && Math.abs(offsetY) <= 1 &&
+            (fromParent & (1 << STEP_DIRECTIONS[offsetX + 1][offsetY + 1])) != 0) {
+            return true;
+        }
+        for (OrdinalDirection first : DIRECTIONS) {
+            int viaX = parentX + first.x;
+            int viaY = parentY + first.y;
+            int restX = targetX - viaX;
+            int restY = targetY - viaY;
+            if ((fromParent & (1 << first.ordinal())) == 0 || (viaX == x && viaY == y) ||
+                Math.abs(restX) > 1 || Math.abs(restY) > 1 || (restX == 0 && restY == 0)) {
+                continue;
+            }
+            int second = STEP_DIRECTIONS[restX + 1][restY + 1];
+            if ((masks.get(viaX, viaY) & (1 << second)) != 0 && order(first.ordinal(), second) < order) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The place of two steps in the order quickest paths are kept to, lowest first
+     */
+    private static int order(int first, int second) {
+        int diagonals = (isDiagonal(first) ? 1 : 0) + (isDiagonal(second) ? 1 : 0);
+        return diagonals * 2 + (!isDiagonal(first) && isDiagonal(second) ? 1 : 0);
+    }
+
+    private interface TraversalMasks {
+        int get(int x, int y);
+    }
+
+    /**
+     * The traversal masks of a region plane and a margin of tiles around it, copied out once for working out
+     * its jump layer
+     */
+    private class TraversalWindow implements TraversalMasks {
+        private static final int MARGIN = 2;
+        private final int minX;
+        private final int minY;
+        private final int width;
+        private final int[] masks;
+        private boolean empty = true;
+
+        TraversalWindow(FlagMap region, int z) {
+            byte[] layer = getTraversableLayer(region);
+            minX = region.minX - MARGIN;
+            minY = region.minY - MARGIN;
+            width = region.maxX - region.minX + 1 + 2 * MARGIN;
+            int height = region.maxY - region.minY + 1 + 2 * MARGIN;
+            masks = new int[width * height];
+            for (int y = minY; y < minY + height; y++) {
+                for (int x = minX; x < minX + width; x++) {
+                    boolean inside = x >= region.minX && x <= region.maxX && y >= region.minY && y <= region.maxY;
+                    int mask = inside ? layer[region.tileIndex(x, y, z)] & 0xFF : getTraversable(x, y, z);
+                    masks[(y - minY) * width + x - minX] = mask;
+                    empty &= !inside || mask == 0;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        @Override
+        public int get(int x, int y) {
+            return masks[(y - minY) * width + x - minX];
+        }
+    }
+
+    private byte[] computeTraversable(FlagMap region) {
+        Neighborhood flags = new Neighborhood(region);
+        byte[] layer = new byte[region.tileCount()];
+        for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+            for (int y = region.minY; y <= region.maxY; y++) {
+                for (int x = region.minX; x <= region.maxX; x++) {
+                    layer[region.tileIndex(x, y, z)] = (byte) flags.traversable(x, y, z);
+                }
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * The flags of a region and a margin of tiles around it, copied out of the region cache once
+     * so that deriving the traversal layer does not have to go through it for every flag
+     */
+    private class Neighborhood {
+        private static final int MARGIN = 2;
+        private final int minX;
+        private final int minY;
+        private final int width;
+        private final int height;
+        private final byte[] flags;
+
+        Neighborhood(FlagMap center) {
+            int regionWidth = center.maxX - center.minX + 1;
+            int regionHeight = center.maxY - center.minY + 1;
+            FlagMap[] regions = new FlagMap[9];
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int x = center.minX + dx * regionWidth;
+                    int y = center.minY + dy * regionHeight;
+                    regions[(dx + 1) * 3 + dy + 1] = (dx == 0 && dy == 0) || x < 0 || y < 0 ? center : getRegion(x, y);
+                }
+            }
+
+            minX = center.minX - MARGIN;
+            minY = center.minY - MARGIN;
+            width = regionWidth + 2 * MARGIN;
+            height = regionHeight + 2 * MARGIN;
+            flags = new byte[width * height * FlagMap.PLANE_COUNT];
+            for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+                for (int y = minY; y < minY + height; y++) {
+                    int j = y < center.minY ? 0 : y > center.maxY ? 2 : 1;
+                    for (int x = minX; x < minX + width; x++) {
+                        int i = x < center.minX ? 0 : x > center.maxX ? 2 : 1;
+                        FlagMap region = regions[i * 3 + j];
+                        flags[index(x, y, z)] = (byte) ((region.get(x, y, z, 0) ? 1 : 0) | (region.get(x, y, z, 1) ? 2 : 0));
+                    }
+                }
+            }
+        }
+
+        private int index(int x, int y, int z) {
+            return (z * height + y - minY) * width + x - minX;
+        }
+
+        private boolean get(int x, int y, int z, int flag) {
+            return (flags[index(x, y, z)] & (1 << flag)) != 0;
+        }
+
+        private boolean n(int x, int y, int z) {
+            return get(x, y, z, 0);
+        }
+
+        private boolean s(int x, int y, int z) {
+            return n(x, y - 1, z);
+        }
+
+        private boolean e(int x, int y, int z) {
+            return get(x, y, z, 1);
+        }
+
+        private boolean w(int x, int y, int z) {
+            return e(x - 1, y, z);
+        }
+
+        private boolean ne(int x, int y, int z) {
+            return n(x, y, z) && e(x, y + 1, z) && e(x, y, z) && n(x + 1, y, z);
+        }
+
+        private boolean nw(int x, int y, int z) {
+            return n(x, y, z) && w(x, y + 1, z) && w(x, y, z) && n(x - 1, y, z);
+        }
+
+        private boolean se(int x, int y, int z) {
+            return s(x, y, z) && e(x, y - 1, z) && e(x, y, z) && s(x + 1, y, z);
+        }
+
+        private boolean sw(int x, int y, int z) {
+            return s(x, y, z) && w(x, y - 1, z) && w(x, y, z) && s(x - 1, y, z);
+        }
+
+        private boolean isBlocked(int x, int y, int z) {
+            return !n(x, y, z) && !s(x, y, z) && !e(x, y, z) && !w(x, y, z);
+        }
+
+        /**
+         * A tile with no walkable edges (e.g. the player is standing inside an object) can be walked out of
+         * towards any unblocked neighbour, as long as a diagonal step does not cut past a blocked tile
+         */
+        private int traversable(int x, int y, int z) {
+            if (isBlocked(x, y, z)) {
+                boolean westBlocked = isBlocked(x - 1, y, z);
+                boolean eastBlocked = isBlocked(x + 1, y, z);
+                boolean southBlocked = isBlocked(x, y - 1, z);
+                boolean northBlocked = isBlocked(x, y + 1, z);
+                return bit(OrdinalDirection.WEST, !westBlocked) |
+                    bit(OrdinalDirection.EAST, !eastBlocked) |
+                    bit(OrdinalDirection.SOUTH, !southBlocked) |
+                    bit(OrdinalDirection.NORTH, !northBlocked) |
+                    bit(OrdinalDirection.SOUTH_WEST, !isBlocked(x - 1, y - 1, z) && !westBlocked && !southBlocked) |
+                    bit(OrdinalDirection.SOUTH_EAST, !isBlocked(x + 1, y - 1, z) && !eastBlocked && !southBlocked) |
+                    bit(OrdinalDirection.NORTH_WEST, !isBlocked(x - 1, y + 1, z) && !westBlocked && !northBlocked) |
+                    bit(OrdinalDirection.NORTH_EAST, !isBlocked(x + 1, y + 1, z) && !eastBlocked && !northBlocked);
+            }
+
+            return bit(OrdinalDirection.WEST, w(x, y, z)) |
+                bit(OrdinalDirection.EAST, e(x, y, z)) |
+                bit(OrdinalDirection.SOUTH, s(x, y, z)) |
+                bit(OrdinalDirection.NORTH, n(x, y, z)) |
+                bit(OrdinalDirection.SOUTH_WEST, sw(x, y, z)) |
+                bit(OrdinalDirection.SOUTH_EAST, se(x, y, z)) |
+                bit(OrdinalDirection.NORTH_WEST, nw(x, y, z)) |
+                bit(OrdinalDirection.NORTH_EAST, ne(x, y, z));
+        }
+
+        private int bit(OrdinalDirection direction, boolean traversable) {
+            return traversable ? 1 << direction.ordinal() : 0;
+        }
+    }
+
+    /**
+     * Loads the collision map bundled with the plugin. The first time (and whenever the bundled map changes)
+     * it is extracted into an uncompressed file in the RuneLite directory, which is then memory-mapped so the
+     * flags are read straight from the page cache and shared between clients on the same machine.
+     */
     public static CollisionMap fromResources() {
-        Map<SplitFlagMap.Position, byte[]> compressedRegions = new HashMap<>();
-        try (ZipInputStream in = new ZipInputStream(ShortestPathPlugin.class.getResourceAsStream("/collision-map.zip"))) {
+        byte[] source;
+        try (InputStream in = ShortestPathPlugin.class.getResourceAsStream("/collision-map.zip")) {
+            source = Util.readAllBytes(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return load(source, MAP_FILE);
+    }
+
+    /**
+     * Maps the flat file extracted from a zip of compressed regions, extracting it first if it is missing or was
+     * extracted from a different zip, or builds the same layout on the heap if the file cannot be written or mapped
+     */
+    static CollisionMap load(byte[] source, File file) {
+        CRC32 crc = new CRC32();
+        crc.update(source);
+        long checksum = crc.getValue();
+
+        try {
+            if (!file.isFile() || readChecksum(map(file)) != checksum) {
+                extract(source, checksum, file);
+            }
+            return new CollisionMap(map(file));
+        } catch (IOException e) {
+            log.warn("Unable to memory-map the collision map, keeping it on the heap instead", e);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                convert(source, checksum, out);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return new CollisionMap(ByteBuffer.wrap(out.toByteArray()));
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void extract(byte[] source, long checksum, File file) throws IOException {
+        Path directory = file.getParentFile().toPath();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getName(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                convert(source, checksum, out);
+            }
+            try {
+                Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // another client may have the old file mapped; use it if it has meanwhile been brought up to date
+                if (readChecksum(map(file)) != checksum) {
+                    throw e;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void convert(byte[] source, long checksum, OutputStream out) throws IOException {
+        Map<Position, byte[]> regions = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(source))) {
             ZipEntry entry;
             while ((entry = in.getNextEntry()) != null) {
                 String[] n = entry.getName().split("_");
 
-                compressedRegions.put(
-                        new SplitFlagMap.Position(Integer.parseInt(n[0]), Integer.parseInt(n[1])),
-                        Util.readAllBytes(in)
+                regions.put(
+                        new Position(Integer.parseInt(n[0]), Integer.parseInt(n[1])),
+                        Util.readAllBytes(new GZIPInputStream(new ByteArrayInputStream(Util.readAllBytes(in))))
                 );
             }
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
         }
-        return new CollisionMap(64, compressedRegions);
+        write(out, REGION_SIZE, FLAG_COUNT, regions, checksum);
     }
 }
@@ -0,0 +1,438 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+/**
+ * The connected components of the walkable tiles of a collision map, used to tell whether a target can be
+ * reached at all before searching for a path to it.
+ * <p>
+ * Tiles are labelled per region and plane, and the local components are then joined across region borders.
+ * Only the join is kept; the local labels of the few tiles that are looked up are recomputed on demand.
+ * Blocked tiles can be walked out of but never into, so each one is a component of its own.
+ * Transports are not part of the index but join components when a query is made, so that the transports
+ * in use can change freely.
+ */
+public class ComponentIndex {
+    private static final short BLOCKED = -1;
+    private static final long BLOCKED_TILE = 1L << 32;
+    private static final int SNAP_RADIUS = 64;
+    private static final int MAXIMUM_CACHED_LABELS = 16;
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+
+    private final CollisionMap map;
+    private final int regionSize;
+    private final int regionsX;
+    private final int regionsY;
+
+    @Getter
+    private volatile boolean ready;
+    /** The index of the first local component of each region and plane */
+    private int[] componentBase;
+    /** The world component of each local component */
+    private int[] components;
+
+    /** The component keys of transport endpoints, which are looked up on every query */
+    private final Map<Integer, Long> endpointKeys = new ConcurrentHashMap<>();
+    private final Map<Integer, short[]> labelCache = new LinkedHashMap<Integer, short[]>(MAXIMUM_CACHED_LABELS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, short[]> eldest) {
+            return size() > MAXIMUM_CACHED_LABELS;
+        }
+    };
+
+    public ComponentIndex(CollisionMap map) {
+        this.map = map;
+        regionSize = map.getRegionSize();
+        regionsX = map.getDataRegionsX();
+        regionsY = map.getDataRegionsY();
+    }
+
+    /**
+     * Labels every tile of the map. This takes a few seconds, and queries made before it has finished
+     * treat every target as reachable.
+     */
+    public void build() {
+        int regionPlanes = regionsX * regionsY * FlagMap.PLANE_COUNT;
+        int[] base = new int[regionPlanes];
+        short[][] borderLabels = new short[regionPlanes][];
+        byte[][] borderMasks = new byte[regionPlanes][];
+        short[] labels = new short[regionSize * regionSize];
+        int[] queue = new int[labels.length];
+        int total = 0;
+
+        for (int rx = 0; rx < regionsX; rx++) {
+            for (int ry = 0; ry < regionsY; ry++) {
+                for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+                    int regionPlane = regionPlaneIndex(rx, ry, z);
+                    base[regionPlane] = total;
+                    int count = label(rx, ry, z, labels, queue);
+                    if (count == 0) {
+                        continue;
+                    }
+                    total += count;
+
+                    short[] border = borderLabels[regionPlane] = new short[4 * regionSize];
+                    byte[] masks = borderMasks[regionPlane] = new byte[4 * regionSize];
+                    for (int i = 0; i < border.length; i++) {
+                        int x = rx * regionSize + borderX(i);
+                        int y = ry * regionSize + borderY(i);
+                        border[i] = labels[borderY(i) * regionSize + borderX(i)];
+                        masks[i] = (byte) map.getTraversable(x, y, z);
+                    }
+                }
+            }
+        }
+
+        int[] parent = new int[total];
+        for (int i = 0; i < total; i++) {
+            parent[i] = i;
+        }
+
+        for (int rx = 0; rx < regionsX; rx++) {
+            for (int ry = 0; ry < regionsY; ry++) {
+                for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+                    int regionPlane = regionPlaneIndex(rx, ry, z);
+                    short[] border = borderLabels[regionPlane];
+                    if (border == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < border.length; i++) {
+                        if (border[i] == BLOCKED) {
+                            continue;
+                        }
+                        int x = rx * regionSize + borderX(i);
+                        int y = ry * regionSize + borderY(i);
+                        int traversable = borderMasks[regionPlane][i] & 0xFF;
+                        for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+                            if ((traversable & 1) == 0) {
+                                continue;
+                            }
+                            int nx = x + DIRECTIONS[d].x;
+                            int ny = y + DIRECTIONS[d].y;
+                            int nrx = nx / regionSize;
+                            int nry = ny / regionSize;
+                            if ((nrx == rx && nry == ry) || nx < 0 || ny < 0 || nrx >= regionsX || nry >= regionsY) {
+                                continue;
+                            }
+                            int neighborPlane = regionPlaneIndex(nrx, nry, z);
+                            short[] neighborBorder = borderLabels[neighborPlane];
+                            int neighborLabel = neighborBorder == null ? BLOCKED :
+                                neighborBorder[borderIndex(nx - nrx * regionSize, ny - nry * regionSize)];
+                            if (neighborLabel != BLOCKED) {
+                                union(parent, base[regionPlane] + border[i], base[neighborPlane] + neighborLabel);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < total; i++) {
+            parent[i] = find(parent, i);
+        }
+
+        componentBase = base;
+        components = parent;
+        ready = true;
+    }
+
+    /**
+     * The nearest tile to a target that can be reached from a start
+     * @param transports  the transports that may be used
+     * @return  the target itself if it can be reached or the index has not been built yet, otherwise the nearest
+     *          reachable tile on the target's plane, or {@link WorldPointUtil#UNDEFINED} if there is none nearby
+     */
+    public int nearestReachable(int packedStart, int packedTarget, Collection<Transport> transports) {
+        if (!ready) {
+            return packedTarget;
+        }
+
+        return nearestReachable(reachable(packedStart, transports), packedTarget);
+    }
+
+    /**
+     * The nearest tile to each of a set of targets that can be reached from a start, finding what can be
+     * reached only once
+     * @see #nearestReachable(int, int, Collection)
+     */
+    public int[] nearestReachable(int packedStart, int[] packedTargets, Collection<Transport> transports) {
+        if (!ready) {
+            return packedTargets.clone();
+        }
+
+        Set<Long> reached = reachable(packedStart, transports);
+        int[] nearest = new int[packedTargets.length];
+        for (int i = 0; i < packedTargets.length; i++) {
+            nearest[i] = nearestReachable(reached, packedTargets[i]);
+        }
+        return nearest;
+    }
+
+    private int nearestReachable(Set<Long> reached, int packedTarget) {
+        if (reached.contains(tileKey(packedTarget))) {
+            return packedTarget;
+        }
+
+        int x = WorldPointUtil.unpackWorldX(packedTarget);
+        int y = WorldPointUtil.unpackWorldY(packedTarget);
+        int z = WorldPointUtil.unpackWorldPlane(packedTarget);
+        for (int r = 1; r <= SNAP_RADIUS; r++) {
+            int nearest = WorldPointUtil.UNDEFINED;
+            int nearestDistance = Integer.MAX_VALUE;
+            for (int i = -r; i <= r; i++) {
+                for (int j = 0; j < 4; j++) {
+                    int dx = j == 0 ? -r : j == 1 ? r : i;
+                    int dy = j == 2 ? -r : j == 3 ? r : i;
+                    int distance = dx * dx + dy * dy;
+                    if (distance >= nearestDistance || x + dx < 0 || y + dy < 0) {
+                        continue;
+                    }
+                    int candidate = WorldPointUtil.packWorldPoint(x + dx, y + dy, z);
+                    if (reached.contains(tileKey(candidate))) {
+                        nearest = candidate;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+            if (nearest != WorldPointUtil.UNDEFINED) {
+                return nearest;
+            }
+        }
+        return WorldPointUtil.UNDEFINED;
+    }
+
+    /**
+     * The keys of the components that can be reached from a start by walking and the given transports
+     */
+    private Set<Long> reachable(int packedStart, Collection<Transport> transports) {
+        cacheEndpointKeys(transports);
+
+        Map<Long, List<Long>> edges = new HashMap<>();
+        for (Transport transport : transports) {
+            long destination = endpointKey(WorldPointUtil.packWorldPoint(transport.getDestination()));
+            int origin = WorldPointUtil.packWorldPoint(transport.getOrigin());
+            long originKey = endpointKey(origin);
+            edges.computeIfAbsent(originKey, k -> new ArrayList<>()).add(destination);
+            if (originKey >= BLOCKED_TILE) {
+                // a transport with a blocked origin can be used from any tile next to it
+                for (OrdinalDirection direction : DIRECTIONS) {
+                    long neighborKey = endpointKey(origin, direction);
+                    edges.computeIfAbsent(neighborKey, k -> new ArrayList<>()).add(destination);
+                }
+            }
+        }
+
+        Set<Long> reached = new HashSet<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        long startKey = tileKey(packedStart);
+        reached.add(startKey);
+        queue.add(startKey);
+        while (!queue.isEmpty()) {
+            long key = queue.poll();
+            List<Long> next = edges.getOrDefault(key, new ArrayList<>());
+            if (key >= BLOCKED_TILE) {
+                next = new ArrayList<>(next);
+                int packed = (int) key;
+                int x = WorldPointUtil.unpackWorldX(packed);
+                int y = WorldPointUtil.unpackWorldY(packed);
+                int z = WorldPointUtil.unpackWorldPlane(packed);
+                int traversable = map.getTraversable(x, y, z);
+                for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+                    if ((traversable & 1) != 0) {
+                        next.add(endpointKey(WorldPointUtil.packWorldPoint(x + DIRECTIONS[d].x, y + DIRECTIONS[d].y, z)));
+                    }
+                }
+            }
+            for (long n : next) {
+                if (reached.add(n)) {
+                    queue.add(n);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Looks up the transport endpoints that have not been seen before, one region at a time
+     * so that each region is labelled only once
+     */
+    private void cacheEndpointKeys(Collection<Transport> transports) {
+        List<Integer> missing = new ArrayList<>();
+        for (Transport transport : transports) {
+            int origin = WorldPointUtil.packWorldPoint(transport.getOrigin());
+            int destination = WorldPointUtil.packWorldPoint(transport.getDestination());
+            if (!endpointKeys.containsKey(destination)) {
+                missing.add(destination);
+            }
+            if (!endpointKeys.containsKey(origin)) {
+                missing.add(origin);
+                for (OrdinalDirection direction : DIRECTIONS) {
+                    missing.add(WorldPointUtil.packWorldPoint(WorldPointUtil.unpackWorldX(origin) + direction.x,
+                        WorldPointUtil.unpackWorldY(origin) + direction.y, WorldPointUtil.unpackWorldPlane(origin)));
+                }
+            }
+        }
+        missing.sort(Comparator.comparingInt(this::regionPlaneIndex));
+        for (int packedPoint : missing) {
+            endpointKey(packedPoint);
+        }
+    }
+
+    private long endpointKey(int packedPoint, OrdinalDirection direction) {
+        int x = WorldPointUtil.unpackWorldX(packedPoint) + direction.x;
+        int y = WorldPointUtil.unpackWorldY(packedPoint) + direction.y;
+        return endpointKey(WorldPointUtil.packWorldPoint(x, y, WorldPointUtil.unpackWorldPlane(packedPoint)));
+    }
+
+    private long endpointKey(int packedPoint) {
+        return endpointKeys.computeIfAbsent(packedPoint, this::tileKey);
+    }
+
+    /**
+     * The world component of a walkable tile, or the tile itself marked with {@link #BLOCKED_TILE} for a blocked tile
+     */
+    private long tileKey(int packedPoint) {
+        int x = WorldPointUtil.unpackWorldX(packedPoint);
+        int y = WorldPointUtil.unpackWorldY(packedPoint);
+        int z = WorldPointUtil.unpackWorldPlane(packedPoint);
+        int rx = x / regionSize;
+        int ry = y / regionSize;
+        if (rx < regionsX && ry < regionsY) {
+            int label = labels(rx, ry, z)[(y - ry * regionSize) * regionSize + (x - rx * regionSize)];
+            if (label != BLOCKED) {
+                return components[componentBase[regionPlaneIndex(rx, ry, z)] + label];
+            }
+        }
+        return BLOCKED_TILE | (packedPoint & 0xFFFFFFFFL);
+    }
+
+    private short[] labels(int rx, int ry, int z) {
+        int regionPlane = regionPlaneIndex(rx, ry, z);
+        synchronized (labelCache) {
+            short[] labels = labelCache.get(regionPlane);
+            if (labels == null) {
+                labels = new short[regionSize * regionSize];
+                label(rx, ry, z, labels, new int[labels.length]);
+                labelCache.put(regionPlane, labels);
+            }
+            return labels;
+        }
+    }
+
+    /**
+     * Labels the walkable tiles of a region plane with their component within the region, in scan order
+     * @return  the number of components
+     */
+    private int label(int rx, int ry, int z, short[] labels, int[] queue) {
+        Arrays.fill(labels, BLOCKED);
+        if (!map.hasRegionData(rx, ry)) {
+            return 0;
+        }
+
+        int minX = rx * regionSize;
+        int minY = ry * regionSize;
+        int count = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] != BLOCKED) {
+                continue;
+            }
+            int tileX = minX + i % regionSize;
+            int tileY = minY + i / regionSize;
+            // every walkable tile has an edge, so the flags only need checking for tiles that have one
+            if (map.getTraversable(tileX, tileY, z) == 0 || map.isBlocked(tileX, tileY, z)) {
+                continue;
+            }
+
+            labels[i] = (short) count;
+            queue[0] = i;
+            for (int head = 0, tail = 1; head < tail; head++) {
+                int x = minX + queue[head] % regionSize;
+                int y = minY + queue[head] / regionSize;
+                int traversable = map.getTraversable(x, y, z);
+                for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+                    if ((traversable & 1) == 0) {
+                        continue;
+                    }
+                    int nx = x + DIRECTIONS[d].x - minX;
+                    int ny = y + DIRECTIONS[d].y - minY;
+                    if (nx < 0 || ny < 0 || nx >= regionSize || ny >= regionSize) {
+                        continue;
+                    }
+                    int j = ny * regionSize + nx;
+                    if (labels[j] == BLOCKED) {
+                        labels[j] = (short) count;
+                        queue[tail++] = j;
+                    }
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private int regionPlaneIndex(int packedPoint) {
+        int x = WorldPointUtil.unpackWorldX(packedPoint);
+        int y = WorldPointUtil.unpackWorldY(packedPoint);
+        return regionPlaneIndex(x / regionSize, y / regionSize, WorldPointUtil.unpackWorldPlane(packedPoint));
+    }
+
+    private int regionPlaneIndex(int rx, int ry, int z) {
+        return (rx * regionsY + ry) * FlagMap.PLANE_COUNT + z;
+    }
+
+    /**
+     * The region x offset of the i-th border tile, going up the west and east columns and then along
+     * the south and north rows. Corner tiles appear twice.
+     */
+    private int borderX(int i) {
+        int side = i / regionSize;
+        return side == 0 ? 0 : side == 1 ? regionSize - 1 : i % regionSize;
+    }
+
+    private int borderY(int i) {
+        int side = i / regionSize;
+        return side == 2 ? 0 : side == 3 ? regionSize - 1 : i % regionSize;
+    }
+
+    private int borderIndex(int x, int y) {
+        if (x == 0) {
+            return y;
+        } else if (x == regionSize - 1) {
+            return regionSize + y;
+        } else if (y == 0) {
+            return 2 * regionSize + x;
+        }
+        return 3 * regionSize + x;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) {
+            parent[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+}
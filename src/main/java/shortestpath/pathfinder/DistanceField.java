@@ -0,0 +1,576 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.Getter;
+import net.runelite.api.coords.WorldPoint;
+import shortestpath.WorldPointUtil;
+
+/**
+ * The travel times from a root tile to the tiles around it, or on the reversed graph from the tiles around it
+ * to the root, found with Dijkstra's algorithm over the map and a set of transports.
+ * <p>
+ * The search settles tiles in order of travel time and can be resumed, so it is only expanded as far as needed
+ * and every tile settled so far keeps its travel time while the root and transports stay the same. A path
+ * between a settled tile and the root is found by following decreasing travel times.
+ * <p>
+ * Travel times are stored in pages covering one region plane each, which are allocated when a tile in them is
+ * first settled. The field stops growing once {@link #MAXIMUM_PAGES} have been allocated. A page is only published
+ * once it has been filled, so the overlays can read travel times while the field is expanded in the background.
+ * <p>
+ * When the transports that may be used change, the field is repaired rather than found again: the travel times
+ * that came through a changed transport are taken away and found again from the tiles around them, and the
+ * improvements from new transports are spread out from where they lead, in the way of incremental searches like
+ * LPA*. The queue of the search is kept, with travel times that became too low skipped when they come up.
+ */
+public class DistanceField {
+    public static final int UNREACHED = Integer.MAX_VALUE;
+    private static final int MAXIMUM_PAGES = 1024;
+    /** The number of tiles settled at a time when expanding up to a travel time, between which queries can get in */
+    private static final int EXPANSION_BATCH = 4096;
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+    /** The number of changed transport edges above which repairing the field is not worth it */
+    private static final int MAXIMUM_REPAIRED_TRANSPORTS = 1024;
+    /** The number of travel times taken away by a change above which the field is found again from scratch */
+    private static final int MAXIMUM_INVALIDATED = 1 << 18;
+
+    private final CollisionMap map;
+    @Getter
+    private final int root;
+    private final boolean reverse;
+    private final boolean avoidWilderness;
+    private TransportGraph graph;
+    private final int regionSize;
+    private final int regionsX;
+    private final int regionsY;
+
+    private final AtomicReferenceArray<int[]> pages;
+    private int pageCount;
+    private int[][] buckets;
+    private int[] bucketSizes;
+    private int queued;
+    private int frontier;
+    private boolean full;
+    /** The travel time up to which the queue can hold travel times that became too low when transports were taken away */
+    private int validatedUntil = -1;
+    private volatile boolean discarded;
+
+    /**
+     * @param graph  the transports that may be used
+     * @param root  the tile the travel times are measured from, or to if reverse
+     * @param reverse  whether to find the travel times to the root rather than from it
+     * @param avoidWilderness  whether paths may not enter the wilderness, unless the root of a reversed field is in it
+     */
+    DistanceField(CollisionMap map, TransportGraph graph, int root, boolean reverse, boolean avoidWilderness) {
+        this.map = map;
+        this.graph = graph;
+        this.root = root;
+        this.reverse = reverse;
+        this.avoidWilderness = avoidWilderness;
+        regionSize = map.getRegionSize();
+        regionsX = map.getDataRegionsX();
+        regionsY = map.getDataRegionsY();
+        pages = new AtomicReferenceArray<>(regionsX * regionsY * FlagMap.PLANE_COUNT);
+        buckets = new int[graph.getMaximumCost() + 1][64];
+        bucketSizes = new int[buckets.length];
+        push(root, 0);
+    }
+
+    /**
+     * Whether the field was made for a root and wilderness setting
+     */
+    boolean isFor(int root, boolean avoidWilderness) {
+        return this.root == root && this.avoidWilderness == avoidWilderness;
+    }
+
+    /**
+     * Brings the field up to date with a change in the transports that may be used. Only the travel times that
+     * depended on a transport that was taken away or became slower are found again, along with those that a new
+     * or quicker transport improves; the rest of the field is kept.
+     * @return  whether the field is up to date, or false if it has to be replaced
+     */
+    synchronized boolean update(TransportGraph updated) {
+        if (updated.transportCosts.equals(graph.transportCosts)) {
+            return true;
+        }
+        if (full) {
+            return false;
+        }
+
+        Set<Long> changed = new HashSet<>();
+        boolean slower = false;
+        for (Map.Entry<Long, Integer> entry : graph.transportCosts.entrySet()) {
+            Integer cost = updated.transportCosts.get(entry.getKey());
+            if (!entry.getValue().equals(cost)) {
+                changed.add(entry.getKey());
+                slower |= cost == null || cost > entry.getValue();
+            }
+        }
+        for (Long key : updated.transportCosts.keySet()) {
+            if (!graph.transportCosts.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        if (changed.size() > MAXIMUM_REPAIRED_TRANSPORTS) {
+            return false;
+        }
+
+        // the tiles whose travel time can come from one of the changed transports
+        Set<Integer> affected = new HashSet<>();
+        for (long key : changed) {
+            int origin = (int) (key >>> 32);
+            int destination = (int) key;
+            if (reverse) {
+                affected.add(origin);
+                for (OrdinalDirection direction : DIRECTIONS) {
+                    affected.add(TransportGraph.move(origin, direction));
+                }
+            } else {
+                affected.add(destination);
+            }
+        }
+
+        graph = updated;
+        if (buckets.length < graph.getMaximumCost() + 1) {
+            resizeBuckets(graph.getMaximumCost() + 1);
+        }
+        if (slower) {
+            // the queue can hold travel times through the transports, including to tiles that were never settled,
+            // and every travel time queued so far is less than a full turn of the buckets past the frontier
+            validatedUntil = Math.max(validatedUntil, frontier + buckets.length);
+        }
+        return repair(affected) && !full;
+    }
+
+    /**
+     * Takes away the travel times that are no longer supported by the tile they came from, then finds them
+     * again along with the improved ones. Tiles which end up further away than the frontier of the search
+     * are queued for it instead.
+     * @return  whether the field was repaired, or false if too much of it depended on the changed transports
+     */
+    private boolean repair(Set<Integer> affected) {
+        int limit = frontier + graph.getMaximumCost();
+        TileBuckets candidates = new TileBuckets(limit);
+        for (int tile : affected) {
+            int distance = getDistance(tile);
+            if (distance != UNREACHED && tile != root) {
+                candidates.add(distance, tile);
+            }
+        }
+
+        // in order of travel time, so the tiles a travel time can come from have already been checked
+        List<Integer> invalidated = new ArrayList<>();
+        while (!candidates.isEmpty()) {
+            int distance = candidates.getCurrent();
+            int tile = candidates.poll();
+            if (getDistance(tile) != distance || getSupportedDistance(tile) == distance) {
+                continue;
+            }
+            setDistance(tile, UNREACHED);
+            invalidated.add(tile);
+            if (invalidated.size() > MAXIMUM_INVALIDATED) {
+                return false;
+            }
+            forEachChild(tile, (child, cost, via) -> {
+                if (getDistance(child) == distance + cost) {
+                    candidates.add(distance + cost, child);
+                }
+            });
+        }
+
+        TileBuckets repairs = new TileBuckets(limit);
+        for (int tile : invalidated) {
+            affected.add(tile);
+        }
+        for (int tile : affected) {
+            int distance = getSupportedDistance(tile);
+            if (distance < getDistance(tile)) {
+                repairs.add(distance, tile);
+            }
+        }
+
+        while (!repairs.isEmpty() && !full) {
+            int distance = repairs.getCurrent();
+            int tile = repairs.poll();
+            if (distance >= getDistance(tile)) {
+                continue;
+            }
+            if (distance > frontier) {
+                push(tile, distance);
+                continue;
+            }
+            setDistance(tile, distance);
+            forEachChild(tile, (child, cost, via) -> {
+                if (distance + cost < getDistance(child)) {
+                    repairs.add(distance + cost, child);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * The travel time between a tile and the root, or {@link #UNREACHED} if the tile has not been settled yet
+     */
+    public int getDistance(int packedPoint) {
+        int[] page = getPage(packedPoint);
+        return page == null ? UNREACHED : page[pageIndex(packedPoint)];
+    }
+
+    /**
+     * Stops expanding a field that is no longer used
+     */
+    void discard() {
+        discarded = true;
+    }
+
+    /**
+     * Settles every tile up to a travel time from the root, unless the field stops growing first
+     */
+    public void expandTo(int maximumDistance) {
+        boolean expanding = true;
+        while (expanding && !discarded) {
+            synchronized (this) {
+                expand(maximumDistance, WorldPointUtil.UNDEFINED, EXPANSION_BATCH);
+                expanding = queued > 0 && !full && frontier <= maximumDistance;
+            }
+        }
+    }
+
+    /**
+     * Settles tiles until a tile is settled, giving up after settling a number of other tiles
+     * @return  the travel time of the tile, or {@link #UNREACHED} if it was not settled
+     */
+    public synchronized int expandUntil(int packedPoint, int maximumSettled) {
+        int distance = getDistance(packedPoint);
+        // a tile that cannot be left will never reach the root of a reversed field
+        boolean isDeadEnd = reverse && graph.getEdges(false).find(packedPoint) == EdgeIndex.NONE &&
+            graph.getNetworkEntries(false).find(packedPoint) == EdgeIndex.NONE && map.getTraversable(
+            WorldPointUtil.unpackWorldX(packedPoint), WorldPointUtil.unpackWorldY(packedPoint), WorldPointUtil.unpackWorldPlane(packedPoint)) == 0;
+        if (distance == UNREACHED && !isDeadEnd) {
+            expand(Integer.MAX_VALUE, packedPoint, maximumSettled);
+            distance = getDistance(packedPoint);
+        }
+        return distance;
+    }
+
+    /**
+     * The path between a settled tile and the root, starting at the root unless the field is reversed,
+     * or null if the tile has not been settled
+     */
+    public synchronized List<WorldPoint> getPath(int packedPoint) {
+        int distance = getDistance(packedPoint);
+        if (distance == UNREACHED) {
+            return null;
+        }
+
+        List<WorldPoint> path = new ArrayList<>();
+        path.add(WorldPointUtil.unpackWorldPoint(packedPoint));
+        int[] next = new int[2];
+        int tile = packedPoint;
+        while (tile != root) {
+            int remaining = distance;
+            next[0] = WorldPointUtil.UNDEFINED;
+            forEachParent(tile, (parent, cost, via) -> {
+                if (next[0] == WorldPointUtil.UNDEFINED && getDistance(parent) == remaining - cost) {
+                    next[0] = parent;
+                    next[1] = via;
+                }
+            });
+
+            if (next[0] == WorldPointUtil.UNDEFINED) {
+                return null;
+            }
+            if (next[1] != WorldPointUtil.UNDEFINED) {
+                path.add(WorldPointUtil.unpackWorldPoint(next[1]));
+            }
+            path.add(WorldPointUtil.unpackWorldPoint(next[0]));
+            tile = next[0];
+            distance = getDistance(tile);
+        }
+
+        if (!reverse) {
+            Collections.reverse(path);
+        }
+        return path;
+    }
+
+    private void expand(int maximumDistance, int until, int maximumSettled) {
+        int settled = 0;
+        while (queued > 0 && !full && frontier <= maximumDistance) {
+            int bucket = frontier % buckets.length;
+            if (bucketSizes[bucket] == 0) {
+                frontier++;
+                continue;
+            }
+            int tile = buckets[bucket][--bucketSizes[bucket]];
+            queued--;
+            if (getDistance(tile) != UNREACHED || (frontier <= validatedUntil && getSupportedDistance(tile) != frontier)) {
+                continue;
+            }
+            settle(tile, frontier);
+            if (tile == until || ++settled >= maximumSettled) {
+                return;
+            }
+        }
+    }
+
+    private void settle(int tile, int distance) {
+        setDistance(tile, distance);
+        if (!full) {
+            forEachChild(tile, (child, cost, via) -> push(child, distance + cost));
+        }
+    }
+
+    private void setDistance(int tile, int distance) {
+        int[] page = getPage(tile);
+        if (page == null) {
+            if (distance == UNREACHED) {
+                return;
+            }
+            if (pageCount >= MAXIMUM_PAGES) {
+                full = true;
+                return;
+            }
+            page = new int[regionSize * regionSize];
+            Arrays.fill(page, UNREACHED);
+            pages.set(pageNumber(tile), page);
+            pageCount++;
+        }
+        page[pageIndex(tile)] = distance;
+    }
+
+    private void push(int tile, int distance) {
+        if (pageNumber(tile) < 0 || getDistance(tile) != UNREACHED) {
+            return;
+        }
+        int bucket = distance % buckets.length;
+        if (bucketSizes[bucket] == buckets[bucket].length) {
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+        }
+        buckets[bucket][bucketSizes[bucket]++] = tile;
+        queued++;
+    }
+
+    /**
+     * Spreads the queue over more buckets, which have to outnumber the cost of the most expensive edge.
+     * Every queued travel time is less than the old number of buckets past the frontier.
+     */
+    private void resizeBuckets(int length) {
+        int[][] resized = new int[length][64];
+        int[] resizedSizes = new int[length];
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            int distance = frontier + Math.floorMod(bucket - frontier, buckets.length);
+            int target = distance % length;
+            for (int i = 0; i < bucketSizes[bucket]; i++) {
+                if (resizedSizes[target] == resized[target].length) {
+                    resized[target] = Arrays.copyOf(resized[target], resizedSizes[target] * 2);
+                }
+                resized[target][resizedSizes[target]++] = buckets[bucket][i];
+            }
+        }
+        buckets = resized;
+        bucketSizes = resizedSizes;
+    }
+
+    /**
+     * The lowest travel time a tile can have through the settled tiles the search reaches it from
+     */
+    private int getSupportedDistance(int tile) {
+        int[] best = {UNREACHED};
+        forEachParent(tile, (parent, cost, via) -> {
+            int distance = getDistance(parent);
+            if (distance != UNREACHED) {
+                best[0] = Math.min(best[0], distance + cost);
+            }
+        });
+        return best[0];
+    }
+
+    /**
+     * Visits the tiles the search reaches from a tile: those it leads to, or in a reversed field those leading to it
+     */
+    private void forEachChild(int tile, EdgeVisitor visitor) {
+        int x = WorldPointUtil.unpackWorldX(tile);
+        int y = WorldPointUtil.unpackWorldY(tile);
+        int z = WorldPointUtil.unpackWorldPlane(tile);
+        if (reverse) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int fromX = x - DIRECTIONS[d].x;
+                int fromY = y - DIRECTIONS[d].y;
+                if ((map.getTraversable(fromX, fromY, z) & (1 << d)) != 0) {
+                    int from = WorldPointUtil.packWorldPoint(fromX, fromY, z);
+                    if (isAllowed(from, tile)) {
+                        visitor.visit(from, 1, WorldPointUtil.UNDEFINED);
+                    }
+                }
+            }
+        } else {
+            int traversable = map.getTraversable(x, y, z);
+            for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+                if ((traversable & 1) != 0) {
+                    int to = WorldPointUtil.packWorldPoint(x + DIRECTIONS[d].x, y + DIRECTIONS[d].y, z);
+                    if (isAllowed(tile, to)) {
+                        visitor.visit(to, 1, WorldPointUtil.UNDEFINED);
+                    }
+                }
+            }
+        }
+
+        EdgeIndex edges = graph.getEdges(reverse);
+        int row = edges.find(tile);
+        if (row != EdgeIndex.NONE) {
+            for (int edge = edges.start(row); edge < edges.end(row); edge++) {
+                if (isAllowed(edges.tile(edge), edges.via(edge), tile, reverse)) {
+                    visitor.visit(edges.tile(edge), edges.cost(edge), edges.via(edge));
+                }
+            }
+        }
+        forEachNetworkEdge(tile, reverse, visitor);
+    }
+
+    /**
+     * Visits the tiles the search reaches a tile from: those it leads to in a reversed field, or otherwise those
+     * leading to it
+     */
+    private void forEachParent(int tile, EdgeVisitor visitor) {
+        int x = WorldPointUtil.unpackWorldX(tile);
+        int y = WorldPointUtil.unpackWorldY(tile);
+        int z = WorldPointUtil.unpackWorldPlane(tile);
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int fromX = reverse ? x : x - DIRECTIONS[d].x;
+            int fromY = reverse ? y : y - DIRECTIONS[d].y;
+            if ((map.getTraversable(fromX, fromY, z) & (1 << d)) != 0) {
+                int from = WorldPointUtil.packWorldPoint(fromX, fromY, z);
+                int to = WorldPointUtil.packWorldPoint(fromX + DIRECTIONS[d].x, fromY + DIRECTIONS[d].y, z);
+                if (isAllowed(from, to)) {
+                    visitor.visit(reverse ? to : from, 1, WorldPointUtil.UNDEFINED);
+                }
+            }
+        }
+
+        EdgeIndex edges = graph.getEdges(!reverse);
+        int row = edges.find(tile);
+        if (row != EdgeIndex.NONE) {
+            for (int edge = edges.start(row); edge < edges.end(row); edge++) {
+                if (isAllowed(edges.tile(edge), edges.via(edge), tile, !reverse)) {
+                    visitor.visit(edges.tile(edge), edges.cost(edge), edges.via(edge));
+                }
+            }
+        }
+        forEachNetworkEdge(tile, !reverse, visitor);
+    }
+
+    /**
+     * Visits the edges through the networks entered from a tile, or those arriving at it if incoming. Unlike a
+     * search, the field visits every one of them, as it has to find the tiles each travel time came from.
+     */
+    private void forEachNetworkEdge(int tile, boolean incoming, EdgeVisitor visitor) {
+        EdgeIndex entries = graph.getNetworkEntries(incoming);
+        int row = entries.find(tile);
+        if (row == EdgeIndex.NONE) {
+            return;
+        }
+        EdgeIndex exits = graph.getNetworkExits(incoming);
+        for (int entry = entries.start(row); entry < entries.end(row); entry++) {
+            int exitRow = exits.find(entries.tile(entry));
+            int entryVia = entries.via(entry);
+            for (int exit = exits.start(exitRow); exit < exits.end(exitRow); exit++) {
+                if (TransportGraph.isLoop(tile, entryVia, exits.tile(exit), exits.via(exit))) {
+                    continue;
+                }
+                int via = entryVia != WorldPointUtil.UNDEFINED ? entryVia : exits.via(exit);
+                if (isAllowed(exits.tile(exit), via, tile, incoming)) {
+                    visitor.visit(exits.tile(exit), entries.cost(entry) + exits.cost(exit), via);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a transport edge found from a tile may be used
+     * @param incoming  whether the edge arrives at the tile rather than leaving it
+     */
+    private boolean isAllowed(int edgeTile, int via, int tile, boolean incoming) {
+        int from = via != WorldPointUtil.UNDEFINED ? via : incoming ? edgeTile : tile;
+        return isAllowed(from, incoming ? tile : edgeTile);
+    }
+
+    private boolean isAllowed(int from, int to) {
+        return !avoidWilderness || !PathfinderConfig.entersWilderness(from, to, reverse ? root : WorldPointUtil.UNDEFINED);
+    }
+
+    private int[] getPage(int packedPoint) {
+        int page = pageNumber(packedPoint);
+        return page < 0 ? null : pages.get(page);
+    }
+
+    private int pageNumber(int packedPoint) {
+        int rx = WorldPointUtil.unpackWorldX(packedPoint) / regionSize;
+        int ry = WorldPointUtil.unpackWorldY(packedPoint) / regionSize;
+        return rx < regionsX && ry < regionsY ? (rx * regionsY + ry) * FlagMap.PLANE_COUNT + WorldPointUtil.unpackWorldPlane(packedPoint) : -1;
+    }
+
+    private int pageIndex(int packedPoint) {
+        return (WorldPointUtil.unpackWorldY(packedPoint) % regionSize) * regionSize + WorldPointUtil.unpackWorldX(packedPoint) % regionSize;
+    }
+
+    /**
+     * Receives an edge of the search: the tile at its other end, its cost, and the blocked transport origin it passes
+     * through or {@link WorldPointUtil#UNDEFINED}
+     */
+    private interface EdgeVisitor {
+        void visit(int tile, int cost, int via);
+    }
+
+    /**
+     * Tiles taken out in order of travel time, where no tile is added with a lower travel time than the last one
+     * taken out, and none with more than a limit
+     */
+    private static class TileBuckets {
+        private final int[][] tiles;
+        private final int[] sizes;
+        private int current;
+        private int count;
+
+        TileBuckets(int limit) {
+            tiles = new int[limit + 1][];
+            sizes = new int[limit + 1];
+        }
+
+        void add(int distance, int tile) {
+            if (tiles[distance] == null) {
+                tiles[distance] = new int[16];
+            } else if (sizes[distance] == tiles[distance].length) {
+                tiles[distance] = Arrays.copyOf(tiles[distance], sizes[distance] * 2);
+            }
+            tiles[distance][sizes[distance]++] = tile;
+            count++;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * The travel time of the next tile
+         */
+        int getCurrent() {
+            while (sizes[current] == 0) {
+                current++;
+            }
+            return current;
+        }
+
+        int poll() {
+            count--;
+            return tiles[getCurrent()][--sizes[current]];
+        }
+    }
+}
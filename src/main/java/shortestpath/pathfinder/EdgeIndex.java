@@ -0,0 +1,113 @@
+package shortestpath.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Edges grouped by the key they are found from, such as a packed world point, in compressed sparse row form:
+ * the keys in order, the offset of the first edge of each, and the edges as {tile, cost, via} in one array.
+ * A key is looked up without allocating. When the keys are tiles, a bitmap of them, which can be shared between
+ * indexes, rejects the tiles without edges before searching.
+ */
+class EdgeIndex {
+    static final int NONE = -1;
+
+    private final VisitedTiles keyTiles;
+    private final int[] keys;
+    private final int[] offsets;
+    private final int[] edges;
+
+    private EdgeIndex(VisitedTiles keyTiles, int[] keys, int[] offsets, int[] edges) {
+        this.keyTiles = keyTiles;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.edges = edges;
+        if (keyTiles != null) {
+            for (int key : keys) {
+                keyTiles.add(key);
+            }
+        }
+    }
+
+    /**
+     * The row of the edges found from a key, or {@link #NONE} if there are none
+     */
+    int find(int key) {
+        if (keyTiles != null && !keyTiles.get(key)) {
+            return NONE;
+        }
+        int row = Arrays.binarySearch(keys, key);
+        return row < 0 ? NONE : row;
+    }
+
+    /**
+     * The first edge of a row
+     */
+    int start(int row) {
+        return offsets[row];
+    }
+
+    /**
+     * The edge after the last edge of a row
+     */
+    int end(int row) {
+        return offsets[row + 1];
+    }
+
+    int tile(int edge) {
+        return edges[edge * 3];
+    }
+
+    int cost(int edge) {
+        return edges[edge * 3 + 1];
+    }
+
+    int via(int edge) {
+        return edges[edge * 3 + 2];
+    }
+
+    /**
+     * Collects edges in any order, keeping the order they were added in for each key
+     */
+    static class Builder {
+        private int[] rows = new int[256];
+        private int count;
+
+        void add(int key, int tile, int cost, int via) {
+            if (count * 4 == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            }
+            rows[count * 4] = key;
+            rows[count * 4 + 1] = tile;
+            rows[count * 4 + 2] = cost;
+            rows[count * 4 + 3] = via;
+            count++;
+        }
+
+        /**
+         * @param keyTiles  the bitmap to add the keys to when they are tiles, or null
+         */
+        EdgeIndex build(VisitedTiles keyTiles) {
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = ((long) rows[i * 4] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            int[] keys = new int[count];
+            int[] offsets = new int[count + 1];
+            int[] edges = new int[count * 3];
+            int keyCount = 0;
+            for (int i = 0; i < count; i++) {
+                int row = (int) order[i];
+                int key = rows[row * 4];
+                if (keyCount == 0 || keys[keyCount - 1] != key) {
+                    keys[keyCount] = key;
+                    offsets[keyCount++] = i;
+                }
+                System.arraycopy(rows, row * 4 + 1, edges, i * 3, 3);
+            }
+            offsets[keyCount] = count;
+            return new EdgeIndex(keyTiles, Arrays.copyOf(keys, keyCount), Arrays.copyOf(offsets, keyCount + 1), edges);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package shortestpath.pathfinder;
 
 import java.nio.ByteBuffer;
-import java.util.BitSet;
 
+/**
+ * Flags for a rectangular area of tiles on all planes. The flags are stored as a little-endian bitset
+ * (the layout of {@link java.util.BitSet#toByteArray()}) starting at an offset into a byte buffer,
+ * which may be a heap buffer or a view into a memory-mapped file.
+ */
 public class FlagMap {
     public static final int PLANE_COUNT = 4;
-    protected final BitSet flags;
+    protected final ByteBuffer flags;
+    private final int offset;
     public final int minX;
     public final int minY;
     public final int maxX;
@@ -14,6 +19,29 @@ public class FlagMap {
     private final int height;
     private final int flagCount;
 
+    /**
+     * A per-tile byte layer derived from the flags of this and the neighbouring regions,
+     * computed on first use by the owning map
+     */
+    volatile byte[] tileLayer;
+
+    /**
+     * A layer of eight entries per tile, one for each direction, for each plane. Each plane is computed for the
+     * jump point search on first use by the owning map, and they are dropped again when what they were derived
+     * from changes. The array is replaced rather than written to, so that the layers in it are safely published.
+     */
+    volatile byte[][] jumpLayers = new byte[PLANE_COUNT][];
+
+    /**
+     * Whether the region is counted towards the loaded size of the owning map, guarded by the region's monitor
+     */
+    boolean cached;
+
+    /**
+     * Whether the region has been used since the owning map's eviction pass last looked at it
+     */
+    boolean referenced;
+
     public FlagMap(int minX, int minY, int maxX, int maxY, int flagCount) {
         this.minX = minX;
         this.minY = minY;
@@ -22,7 +50,8 @@ public class FlagMap {
         this.flagCount = flagCount;
         width = (maxX - minX + 1);
         height = (maxY - minY + 1);
-        flags = new BitSet(width * height * PLANE_COUNT * flagCount);
+        flags = ByteBuffer.allocate(byteCount(width, height, flagCount));
+        offset = 0;
     }
 
     public FlagMap(byte[] bytes, int flagCount) {
@@ -34,17 +63,46 @@ public class FlagMap {
         this.flagCount = flagCount;
         width = (maxX - minX + 1);
         height = (maxY - minY + 1);
-        flags = BitSet.valueOf(buffer);
+        flags = ByteBuffer.allocate(byteCount(width, height, flagCount));
+        flags.put(bytes, 16, Math.min(bytes.length - 16, flags.capacity()));
+        offset = 0;
+    }
+
+    /**
+     * A read-only view of flags stored in a shared buffer
+     * @param flags  the buffer holding the flags
+     * @param offset  the byte offset of the first flag in the buffer
+     */
+    public FlagMap(ByteBuffer flags, int offset, int minX, int minY, int maxX, int maxY, int flagCount) {
+        this.flags = flags;
+        this.offset = offset;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.flagCount = flagCount;
+        width = (maxX - minX + 1);
+        height = (maxY - minY + 1);
+    }
+
+    /**
+     * The number of bytes needed to store the flags for an area
+     */
+    public static int byteCount(int width, int height, int flagCount) {
+        return (width * height * PLANE_COUNT * flagCount + 7) / 8;
     }
 
     public byte[] toBytes() {
-        byte[] bytes = new byte[16 + flags.size()];
+        int byteCount = byteCount(width, height, flagCount);
+        byte[] bytes = new byte[16 + byteCount];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
         buffer.putInt(minX);
         buffer.putInt(minY);
         buffer.putInt(maxX);
         buffer.putInt(maxY);
-        buffer.put(flags.toByteArray());
+        for (int i = 0; i < byteCount; i++) {
+            buffer.put(flags.get(offset + i));
+        }
         return bytes;
     }
 
@@ -53,11 +111,26 @@ public class FlagMap {
             return false;
         }
 
-        return flags.get(index(x, y, z, flag));
+        int index = index(x, y, z, flag);
+        return (flags.get(offset + (index >>> 3)) & (1 << (index & 7))) != 0;
     }
 
     public void set(int x, int y, int z, int flag, boolean value) {
-        flags.set(index(x, y, z, flag), value);
+        int index = index(x, y, z, flag);
+        int i = offset + (index >>> 3);
+        int mask = 1 << (index & 7);
+        flags.put(i, (byte) (value ? flags.get(i) | mask : flags.get(i) & ~mask));
+    }
+
+    /**
+     * The index of a tile within a per-tile layer covering this map
+     */
+    int tileIndex(int x, int y, int z) {
+        return z * width * height + (y - minY) * width + (x - minX);
+    }
+
+    int tileCount() {
+        return width * height * PLANE_COUNT;
     }
 
     private int index(int x, int y, int z, int flag) {
@@ -0,0 +1,403 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+/**
+ * Lower bounds on the travel time between tiles from the travel times to and from a few landmarks (the ALT heuristic),
+ * which unlike the distance on the map remain lower bounds when transports are used.
+ * <p>
+ * By the triangle inequality, the travel time from a tile v to a target t is at least d(L, t) - d(L, v)
+ * and d(v, L) - d(t, L) for any landmark L. The travel times from and to each landmark are found over the
+ * whole map and all transports in the background, but only the smallest and largest of each region plane
+ * are kept, so the bounds are taken between regions rather than tiles.
+ */
+public class Landmarks {
+    private static final int LANDMARK_COUNT = 4;
+    /** Lumbridge, which the other landmarks are chosen to be far away from */
+    private static final int FIRST_LANDMARK = WorldPointUtil.packWorldPoint(3222, 3218, 0);
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+
+    private final CollisionMap map;
+    private final Executor executor;
+    private final int regionSize;
+    private final int regionsX;
+    private final int regionsY;
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile Tables tables;
+
+    /**
+     * @param executor  runs the rebuilds when new transports come into use
+     */
+    public Landmarks(CollisionMap map, Executor executor) {
+        this.map = map;
+        this.executor = executor;
+        regionSize = map.getRegionSize();
+        regionsX = map.getDataRegionsX();
+        regionsY = map.getDataRegionsY();
+    }
+
+    /**
+     * The lower bounds towards a target, or null if the tables have not been built yet or do not include
+     * every transport in use. In the latter case the tables are rebuilt in the background.
+     * @param transports  the transports that may be used
+     */
+    public Bounds getBounds(int packedStart, int packedTarget, Collection<Transport> transports) {
+        Tables current = tables;
+        if (current == null) {
+            return null;
+        }
+        for (Transport transport : transports) {
+            int origin = WorldPointUtil.packWorldPoint(transport.getOrigin());
+            // a transport from the start can only be the first step of a path, where the bound is not used
+            if (origin != packedStart && !current.includes(transport)) {
+                rebuild(transports);
+                return null;
+            }
+        }
+        return new Bounds(current, regionPlaneIndex(packedTarget), false);
+    }
+
+    /**
+     * The lower bounds from a start, for searching backwards from a target, or null as for {@link #getBounds}
+     */
+    public Bounds getBoundsFrom(int packedStart, Collection<Transport> transports) {
+        Tables current = tables;
+        if (current == null) {
+            return null;
+        }
+        for (Transport transport : transports) {
+            // unlike towards a target, a transport from the start can shorten the travel time to every tile
+            if (!current.includes(transport)) {
+                rebuild(transports);
+                return null;
+            }
+        }
+        return new Bounds(current, regionPlaneIndex(packedStart), true);
+    }
+
+    private void rebuild(Collection<Transport> transports) {
+        if (building.compareAndSet(false, true)) {
+            List<Transport> copy = new ArrayList<>(transports);
+            try {
+                executor.execute(() -> build(copy));
+            } catch (RejectedExecutionException e) {
+                building.set(false);
+            }
+        }
+    }
+
+    /**
+     * Works out the travel times from and to the landmarks over the map and the given transports.
+     * Each landmark after the first is the tile furthest from the landmarks before it.
+     */
+    public void build(Collection<Transport> transports) {
+        building.set(true);
+        try {
+            Graph graph = new Graph(transports);
+            int[] landmarks = new int[LANDMARK_COUNT];
+            int[][] fromMin = new int[LANDMARK_COUNT][];
+            int[][] fromMax = new int[LANDMARK_COUNT][];
+            int[][] toMin = new int[LANDMARK_COUNT][];
+            int[][] toMax = new int[LANDMARK_COUNT][];
+            int[] furthestTiles = null;
+            int[] nearestLandmark = null;
+
+            landmarks[0] = FIRST_LANDMARK;
+            for (int i = 0; i < LANDMARK_COUNT; i++) {
+                if (i > 0) {
+                    landmarks[i] = furthest(nearestLandmark, furthestTiles);
+                }
+                Search from = new Search(graph, false);
+                from.run(landmarks[i]);
+                Search to = new Search(graph, true);
+                to.run(landmarks[i]);
+                fromMin[i] = from.min;
+                fromMax[i] = from.completeMax();
+                toMin[i] = to.min;
+                toMax[i] = to.completeMax();
+
+                if (nearestLandmark == null) {
+                    nearestLandmark = from.min.clone();
+                    furthestTiles = from.first;
+                } else {
+                    for (int j = 0; j < nearestLandmark.length; j++) {
+                        nearestLandmark[j] = Math.min(nearestLandmark[j], from.min[j]);
+                    }
+                }
+            }
+
+            tables = new Tables(fromMin, fromMax, toMin, toMax, graph.transports.transportCosts);
+        } finally {
+            building.set(false);
+        }
+    }
+
+    /**
+     * The first tile reached from the first landmark in the region plane that is furthest from the nearest landmark
+     */
+    private static int furthest(int[] nearestLandmark, int[] firstTiles) {
+        int best = -1;
+        for (int i = 0; i < nearestLandmark.length; i++) {
+            if (firstTiles[i] != WorldPointUtil.UNDEFINED && (best < 0 || nearestLandmark[i] > nearestLandmark[best])) {
+                best = i;
+            }
+        }
+        return firstTiles[best];
+    }
+
+    private int regionPlaneIndex(int packedPoint) {
+        int rx = WorldPointUtil.unpackWorldX(packedPoint) / regionSize;
+        int ry = WorldPointUtil.unpackWorldY(packedPoint) / regionSize;
+        return rx < regionsX && ry < regionsY ? (rx * regionsY + ry) * FlagMap.PLANE_COUNT + WorldPointUtil.unpackWorldPlane(packedPoint) : -1;
+    }
+
+    /**
+     * The lower bounds on the travel time from any tile to one target, or from one start to any tile.
+     * From a start s the bounds are d(L, v) - d(L, s) and d(s, L) - d(v, L).
+     */
+    public class Bounds {
+        private final Tables tables;
+        private final boolean fromStart;
+        private final int[] endFrom = new int[LANDMARK_COUNT];
+        private final int[] endTo = new int[LANDMARK_COUNT];
+
+        private Bounds(Tables tables, int endRegion, boolean fromStart) {
+            this.tables = tables;
+            this.fromStart = fromStart;
+            for (int i = 0; i < LANDMARK_COUNT; i++) {
+                if (endRegion < 0) {
+                    endFrom[i] = endTo[i] = UNREACHED;
+                } else {
+                    endFrom[i] = (fromStart ? tables.fromMax : tables.fromMin)[i][endRegion];
+                    endTo[i] = (fromStart ? tables.toMin : tables.toMax)[i][endRegion];
+                }
+            }
+        }
+
+        public int lowerBound(int packedPoint) {
+            int region = regionPlaneIndex(packedPoint);
+            if (region < 0) {
+                return 0;
+            }
+
+            int bound = 0;
+            for (int i = 0; i < LANDMARK_COUNT; i++) {
+                int from = (fromStart ? tables.fromMin : tables.fromMax)[i][region];
+                if (endFrom[i] != UNREACHED && from != UNREACHED) {
+                    bound = Math.max(bound, fromStart ? from - endFrom[i] : endFrom[i] - from);
+                }
+                int to = (fromStart ? tables.toMax : tables.toMin)[i][region];
+                if (to != UNREACHED && endTo[i] != UNREACHED) {
+                    bound = Math.max(bound, fromStart ? endTo[i] - to : to - endTo[i]);
+                }
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * The smallest and largest travel times from and to each landmark per region plane. The largest is
+     * only kept for region planes where every tile that a path can pass through was reached.
+     */
+    private static class Tables {
+        private final int[][] fromMin;
+        private final int[][] fromMax;
+        private final int[][] toMin;
+        private final int[][] toMax;
+        private final Map<Long, Integer> transportCosts;
+
+        Tables(int[][] fromMin, int[][] fromMax, int[][] toMin, int[][] toMax, Map<Long, Integer> transportCosts) {
+            this.fromMin = fromMin;
+            this.fromMax = fromMax;
+            this.toMin = toMin;
+            this.toMax = toMax;
+            this.transportCosts = transportCosts;
+        }
+
+        boolean includes(Transport transport) {
+            Integer cost = transportCosts.get(TransportGraph.transportKey(transport));
+            return cost != null && cost <= Pathfinder.getCost(transport);
+        }
+    }
+
+    /**
+     * The transport edges of the map and the number of tiles a path can pass through in each region plane
+     */
+    private class Graph {
+        private final TransportGraph transports;
+        private final int[] passable = new int[regionsX * regionsY * FlagMap.PLANE_COUNT];
+
+        Graph(Collection<Transport> transports) {
+            this.transports = new TransportGraph(map, transports);
+
+            for (int destination : this.transports.blockedDestinations) {
+                int region = regionPlaneIndex(destination);
+                if (region >= 0) {
+                    passable[region]++;
+                }
+            }
+            for (int rx = 0; rx < regionsX; rx++) {
+                for (int ry = 0; ry < regionsY; ry++) {
+                    if (!map.hasRegionData(rx, ry)) {
+                        continue;
+                    }
+                    for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+                        int region = (rx * regionsY + ry) * FlagMap.PLANE_COUNT + z;
+                        for (int y = ry * regionSize; y < (ry + 1) * regionSize; y++) {
+                            for (int x = rx * regionSize; x < (rx + 1) * regionSize; x++) {
+                                if (map.getTraversable(x, y, z) != 0 && !map.isBlocked(x, y, z)) {
+                                    passable[region]++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra's algorithm from (or, on the reversed graph, to) a landmark over the whole map, using a bucket queue
+     * since every travel time is a small whole number
+     */
+    private class Search {
+        private final Graph graph;
+        private final boolean reverse;
+        private final int[] min;
+        private final int[] max;
+        private final int[] first;
+        private final int[] reached;
+        private final VisitedTiles settled = new VisitedTiles();
+        private final int[][] buckets;
+        private final int[] bucketSizes;
+        /** The least travel time each network has been entered at */
+        private final int[] networkCosts;
+        private int queued;
+
+        Search(Graph graph, boolean reverse) {
+            this.graph = graph;
+            this.reverse = reverse;
+            min = new int[graph.passable.length];
+            max = new int[graph.passable.length];
+            first = new int[graph.passable.length];
+            reached = new int[graph.passable.length];
+            Arrays.fill(min, UNREACHED);
+            Arrays.fill(first, WorldPointUtil.UNDEFINED);
+            buckets = new int[graph.transports.getMaximumCost() + 1][64];
+            bucketSizes = new int[buckets.length];
+            networkCosts = new int[graph.transports.getNetworkCount()];
+            Arrays.fill(networkCosts, UNREACHED);
+        }
+
+        void run(int landmark) {
+            push(landmark, 0);
+            for (int distance = 0; queued > 0; distance++) {
+                int bucket = distance % buckets.length;
+                while (bucketSizes[bucket] > 0) {
+                    int tile = buckets[bucket][--bucketSizes[bucket]];
+                    queued--;
+                    if (settled.add(tile)) {
+                        settle(tile, distance);
+                    }
+                }
+            }
+        }
+
+        private void settle(int tile, int distance) {
+            int region = regionPlaneIndex(tile);
+            if (region >= 0) {
+                if (min[region] == UNREACHED) {
+                    min[region] = distance;
+                    first[region] = tile;
+                }
+                max[region] = distance;
+                if (!reverse || graph.transports.isPassable(tile)) {
+                    reached[region]++;
+                }
+            }
+
+            int x = WorldPointUtil.unpackWorldX(tile);
+            int y = WorldPointUtil.unpackWorldY(tile);
+            int z = WorldPointUtil.unpackWorldPlane(tile);
+            if (reverse) {
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    int fromX = x - DIRECTIONS[d].x;
+                    int fromY = y - DIRECTIONS[d].y;
+                    if ((map.getTraversable(fromX, fromY, z) & (1 << d)) != 0) {
+                        push(WorldPointUtil.packWorldPoint(fromX, fromY, z), distance + 1);
+                    }
+                }
+            } else {
+                int traversable = map.getTraversable(x, y, z);
+                for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+                    if ((traversable & 1) != 0) {
+                        push(WorldPointUtil.packWorldPoint(x + DIRECTIONS[d].x, y + DIRECTIONS[d].y, z), distance + 1);
+                    }
+                }
+            }
+
+            EdgeIndex edges = graph.transports.getEdges(reverse);
+            int row = edges.find(tile);
+            if (row != EdgeIndex.NONE) {
+                for (int edge = edges.start(row); edge < edges.end(row); edge++) {
+                    push(edges.tile(edge), distance + edges.cost(edge));
+                }
+            }
+
+            // tiles are settled in order of travel time, so a network only has to be left from where it is first entered
+            EdgeIndex entries = graph.transports.getNetworkEntries(reverse);
+            row = entries.find(tile);
+            if (row != EdgeIndex.NONE) {
+                EdgeIndex exits = graph.transports.getNetworkExits(reverse);
+                for (int entry = entries.start(row); entry < entries.end(row); entry++) {
+                    int network = entries.tile(entry);
+                    int cost = distance + entries.cost(entry);
+                    if (cost >= networkCosts[network]) {
+                        continue;
+                    }
+                    networkCosts[network] = cost;
+                    int exitRow = exits.find(network);
+                    for (int exit = exits.start(exitRow); exit < exits.end(exitRow); exit++) {
+                        if (!TransportGraph.isLoop(tile, entries.via(entry), exits.tile(exit), exits.via(exit))) {
+                            push(exits.tile(exit), cost + exits.cost(exit));
+                        }
+                    }
+                }
+            }
+        }
+
+        private void push(int tile, int distance) {
+            if (settled.get(tile)) {
+                return;
+            }
+            int bucket = distance % buckets.length;
+            if (bucketSizes[bucket] == buckets[bucket].length) {
+                buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+            }
+            buckets[bucket][bucketSizes[bucket]++] = tile;
+            queued++;
+        }
+
+        /**
+         * The largest travel time of each region plane where every tile a path can pass through was reached
+         */
+        int[] completeMax() {
+            int[] result = new int[max.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = reached[i] >= graph.passable[i] && min[i] != UNREACHED ? max[i] : UNREACHED;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package shortestpath.pathfinder;
+
+import java.util.Arrays;
+import shortestpath.WorldPointUtil;
+
+/**
+ * Struct-of-arrays storage for search nodes. A node is an index into parallel primitive arrays
+ * holding its packed position, parent node, travel time so far (g), estimated total travel time (f),
+ * whether it was reached by a transport and the direction it was jumped to in. An arena is reused across
+ * searches, so once its arrays have grown to fit a typical search, running another search allocates nothing.
+ */
+public class NodeArena {
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    final NodeHeap boundary = new NodeHeap(this);
+    final TileIntMap nodes = new TileIntMap(NONE);
+
+    int[] position = new int[INITIAL_CAPACITY];
+    int[] parent = new int[INITIAL_CAPACITY];
+    int[] cost = new int[INITIAL_CAPACITY];
+    int[] priority = new int[INITIAL_CAPACITY];
+    int[] heapIndex = new int[INITIAL_CAPACITY];
+    boolean[] transport = new boolean[INITIAL_CAPACITY];
+    byte[] arrival = new byte[INITIAL_CAPACITY];
+    private int size;
+    private int[] path = new int[256];
+
+    public int add(int position, int parent, int cost, int priority, boolean transport) {
+        if (size == this.position.length) {
+            grow();
+        }
+        int node = size++;
+        this.position[node] = position;
+        this.parent[node] = parent;
+        this.cost[node] = cost;
+        this.priority[node] = priority;
+        this.heapIndex[node] = NONE;
+        this.transport[node] = transport;
+        this.arrival[node] = CollisionMap.NO_DIRECTION;
+        return node;
+    }
+
+    /**
+     * Re-parents a node onto a cheaper path, which may have reached it by a transport, keeping its heuristic
+     */
+    public void update(int node, int parent, int cost, boolean transport) {
+        this.priority[node] += cost - this.cost[node];
+        this.parent[node] = parent;
+        this.cost[node] = cost;
+        this.transport[node] = transport;
+    }
+
+    public int getPosition(int node) {
+        return position[node];
+    }
+
+    public int getCost(int node) {
+        return cost[node];
+    }
+
+    public int getPriority(int node) {
+        return priority[node];
+    }
+
+    public boolean isTransport(int node) {
+        return transport[node];
+    }
+
+    /**
+     * The direction a node was jumped to in, or {@link CollisionMap#NO_DIRECTION}
+     */
+    public int getArrival(int node) {
+        return arrival[node];
+    }
+
+    public void setArrival(int node, int direction) {
+        arrival[node] = (byte) direction;
+    }
+
+    /**
+     * Walks the parent indices from a node back to the start of the search, filling in the tiles jumped over
+     * @param node  the last node of the path
+     * @return  the number of packed positions written to {@link #getPathBuffer()}, start first
+     */
+    public int getPath(int node) {
+        int length = 0;
+        for (int n = node; n != NONE; n = parent[n]) {
+            length += getSteps(n);
+        }
+        if (length > path.length) {
+            path = new int[Math.max(length, path.length * 2)];
+        }
+        int i = length;
+        for (int n = node; n != NONE; n = parent[n]) {
+            int x = WorldPointUtil.unpackWorldX(position[n]);
+            int y = WorldPointUtil.unpackWorldY(position[n]);
+            int steps = getSteps(n);
+            int stepX = steps == 1 ? 0 : Integer.signum(WorldPointUtil.unpackWorldX(position[parent[n]]) - x);
+            int stepY = steps == 1 ? 0 : Integer.signum(WorldPointUtil.unpackWorldY(position[parent[n]]) - y);
+            for (int step = 0; step < steps; step++) {
+                path[--i] = WorldPointUtil.packWorldPoint(x + step * stepX, y + step * stepY,
+                    WorldPointUtil.unpackWorldPlane(position[n]));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The number of tiles a node adds to a path: one, or for a jump the tiles along the line from its parent
+     */
+    private int getSteps(int node) {
+        if (transport[node] || parent[node] == NONE) {
+            return 1;
+        }
+        return Math.max(1, WorldPointUtil.distanceBetween2D(position[parent[node]], position[node]));
+    }
+
+    public int[] getPathBuffer() {
+        return path;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        boundary.clear();
+        nodes.clear();
+    }
+
+    private void grow() {
+        int capacity = position.length * 2;
+        position = Arrays.copyOf(position, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        cost = Arrays.copyOf(cost, capacity);
+        priority = Arrays.copyOf(priority, capacity);
+        heapIndex = Arrays.copyOf(heapIndex, capacity);
+        transport = Arrays.copyOf(transport, capacity);
+        arrival = Arrays.copyOf(arrival, capacity);
+    }
+}
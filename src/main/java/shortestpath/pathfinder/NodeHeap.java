@@ -0,0 +1,116 @@
+package shortestpath.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of arena nodes supporting decrease-key.
+ * Nodes are ordered by their estimated total travel time, with ties broken in favour of the node closest
+ * to the target. Each node's position in the heap is stored in the arena, so re-ordering a node after its
+ * cost has been lowered is O(log n) and does not need to search the heap.
+ */
+public class NodeHeap {
+    private final NodeArena arena;
+    private int[] heap = new int[1024];
+    private int size;
+
+    public NodeHeap(NodeArena arena) {
+        this.arena = arena;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(int node) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = node;
+        siftUp(size++);
+    }
+
+    public int peek() {
+        return size == 0 ? NodeArena.NONE : heap[0];
+    }
+
+    public int poll() {
+        if (size == 0) {
+            return NodeArena.NONE;
+        }
+
+        int result = heap[0];
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            siftDown(0);
+        }
+        arena.heapIndex[result] = NodeArena.NONE;
+        return result;
+    }
+
+    public boolean contains(int node) {
+        return arena.heapIndex[node] != NodeArena.NONE;
+    }
+
+    /**
+     * Restores the heap order after the cost of a node already in the heap has been lowered
+     */
+    public void decreaseKey(int node) {
+        siftUp(arena.heapIndex[node]);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            arena.heapIndex[heap[i]] = NodeArena.NONE;
+        }
+        size = 0;
+    }
+
+    private boolean less(int a, int b) {
+        int pa = arena.priority[a];
+        int pb = arena.priority[b];
+        if (pa != pb) {
+            return pa < pb;
+        }
+        return pa - arena.cost[a] < pb - arena.cost[b];
+    }
+
+    private void siftUp(int index) {
+        int node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(node, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            arena.heapIndex[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = node;
+        arena.heapIndex[node] = index;
+    }
+
+    private void siftDown(int index) {
+        int node = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && less(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!less(heap[child], node)) {
+                break;
+            }
+            heap[index] = heap[child];
+            arena.heapIndex[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = node;
+        arena.heapIndex[node] = index;
+    }
+}
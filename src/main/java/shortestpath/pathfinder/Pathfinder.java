@@ -1,163 +1,785 @@
 package shortestpath.pathfinder;
 
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import lombok.Getter;
 import net.runelite.api.coords.WorldPoint;
 import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
 
 public class Pathfinder implements Runnable {
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+    private static final long PATH_UPDATE_INTERVAL = 50_000_000L;
+    /** The number of tiles expanded between checks for cancellation and the cutoff */
+    private static final int EXPANSION_BATCH = 256;
+    /** How much further than the path found the travel times to the target are prepared, to cover detours */
+    private static final int TARGET_FIELD_MARGIN = 64;
+    /** The number of tiles the travel times to the target are extended by before searching again instead */
+    private static final int TARGET_FIELD_EXTENSION = 200_000;
+    /** The most targets the landmark bounds are taken for, as the heuristic takes the least bound over them all */
+    private static final int MAXIMUM_BOUNDED_TARGETS = 4;
+
     @Getter
     private final WorldPoint start;
+    /**
+     * The tiles the path may lead to, of which the search settles on whichever is quickest to reach
+     */
+    @Getter
+    private final Set<WorldPoint> targets;
+    /**
+     * The target the path leads to: the nearest one until the search has settled on one
+     */
     @Getter
-    private final WorldPoint target;
+    private volatile WorldPoint target;
     private final PathfinderConfig config;
+    private int startPacked;
+    /** The reachable tiles the search heads for, in the order of {@link #goalTargets} */
+    private int[] goals;
+    private WorldPoint[] goalTargets;
+    private int[] sortedGoals;
+    /**
+     * A goal to test steps into the wilderness against. When avoiding the wilderness the goals are either all
+     * in it or all out of it, and otherwise the goal does not matter.
+     */
+    private int targetPacked;
+    /**
+     * The transports the search could use, once it has started
+     */
+    @Getter
+    private volatile List<Transport> transports;
+    /** The teleports that can be used from anywhere, which have no origin */
+    private List<Transport> globalTeleports;
+    /** The teleports that can be used from anywhere, as transports from the start, which begin the search */
+    private List<Transport> teleports;
+    /** The transports together with the teleports from the start, for what has to know of every way to travel */
+    private List<Transport> startTransports;
 
-    private final List<Node> boundary = new LinkedList<>();
-    private final Set<WorldPoint> visited = new HashSet<>();
-    private final List<Node> pending = new ArrayList<Node>() {
-        @Override
-        public boolean add(Node n) {
-            boolean result = super.add(n);
-            sort(null);
-            return result;
-        }
-    };
+    private NodeArena arena;
+    /**
+     * Whether the forward search jumps along straight and diagonal lines to the tiles where a quickest path could
+     * turn, rather than adding the tiles around each tile it visits
+     */
+    private boolean jumping;
+    /**
+     * The regions a long search is kept to, or null. The steps left out are kept, and the least travel time any
+     * path through them could take, so that the search can go on past the corridor when a quicker path than the
+     * one found there might lead outside it.
+     */
+    private BitSet corridor;
+    private int corridorBound;
+    /** The nodes with steps left out of the corridor, with those of the backward search inverted */
+    private int[] leftOut = new int[64];
+    private int leftOutCount;
+    private Landmarks.Bounds[] bounds;
+    private int[] transportBounds;
+    /** The edges of the usable transports, compiled by the config before the search starts */
+    private TransportGraph transportGraph;
+    /**
+     * The least cost each network has been entered at by each search, for which its stations have been added.
+     * A network has two entries, as the wilderness rules treat the stations in the wilderness differently.
+     */
+    private int[] networkCosts;
+    private int[] backwardNetworkCosts;
+
+    /** The search backwards from the target when searching from both ends, or null */
+    private NodeArena backwardArena;
+    private Landmarks.Bounds startBounds;
+    private int startTransportBound;
+    /** The cheapest path found through a tile reached from both ends, and that tile */
+    private int meetingCost;
+    private int meetingTile;
+    private final int[] neighbors = new int[8];
+    /** The number of nodes the last search took from its boundaries, for comparing ways of searching */
+    private int expandedCount;
 
     @Getter
-    private List<WorldPoint> path = new ArrayList<>();
+    private volatile List<WorldPoint> path = new ArrayList<>();
+    /**
+     * Completes with the final path when the search finishes, or is cancelled along with the search
+     */
     @Getter
-    private boolean done = false;
+    private final CompletableFuture<List<WorldPoint>> result = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    /** Whether the path leads all the way to a target, rather than towards one */
+    private boolean complete;
 
     public Pathfinder(PathfinderConfig config, WorldPoint start, WorldPoint target) {
+        this(config, start, Collections.singleton(target));
+    }
+
+    /**
+     * Searches for the quickest path to any of a set of targets, such as the nearest of a kind of place
+     */
+    public Pathfinder(PathfinderConfig config, WorldPoint start, Collection<WorldPoint> targets) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No targets to search for");
+        }
         this.config = config;
         this.start = start;
-        this.target = target;
+        this.targets = Collections.unmodifiableSet(new LinkedHashSet<>(targets));
+        for (WorldPoint candidate : this.targets) {
+            if (target == null || start.distanceTo2D(candidate) < start.distanceTo2D(target)) {
+                target = candidate;
+            }
+        }
         this.config.refresh();
 
-        new Thread(this).start();
+        config.submit(this);
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * Stops the search after the current batch of tiles, or before it starts if it is still queued
+     */
+    public void cancel() {
+        cancelled = true;
+        result.cancel(false);
+    }
+
+    /**
+     * A lower bound on the travel time to the nearest goal: for each goal the distance to walk there, unless
+     * using a transport and walking from where it ends could be quicker, or the landmark bound if that is higher
+     */
+    private int heuristic(int position) {
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < goals.length; i++) {
+            int estimate = Math.min(WorldPointUtil.distanceBetween2D(position, goals[i]), transportBounds[i]);
+            if (bounds[i] != null) {
+                estimate = Math.max(estimate, bounds[i].lowerBound(position));
+            }
+            best = Math.min(best, estimate);
+        }
+        return best;
+    }
+
+    /**
+     * A lower bound on the travel time from the start, for searching backwards: the distance to walk from there,
+     * unless walking to a transport and using it could be quicker, or the landmark bound if that is higher
+     */
+    private int heuristicFromStart(int position) {
+        int estimate = Math.min(WorldPointUtil.distanceBetween2D(startPacked, position), startTransportBound);
+        return startBounds == null ? estimate : Math.max(estimate, startBounds.lowerBound(position));
+    }
+
+    private boolean isGoal(int position) {
+        return goals.length == 1 ? position == goals[0] : Arrays.binarySearch(sortedGoals, position) >= 0;
+    }
+
+    private long distanceToGoals(int position) {
+        long best = Long.MAX_VALUE;
+        for (int goal : goals) {
+            best = Math.min(best, WorldPointUtil.distanceBetween(position, goal));
+        }
+        return best;
+    }
+
+    private void addNeighbor(int node, int neighbor, int cost, boolean isTransport) {
+        addNeighbor(arena, node, neighbor, cost, isTransport, WorldPointUtil.UNDEFINED, CollisionMap.NO_DIRECTION);
     }
 
-    private void addNeighbor(Node node, WorldPoint neighbor, int wait) {
-        if (config.avoidWilderness(node.position, neighbor, target)) {
+    /**
+     * @param side  the arena of the search the node belongs to, where searching backwards the neighbor leads
+     *              to the node rather than the other way around
+     * @param via  the blocked origin of a transport used from an adjacent tile, which costs an extra step
+     *             and is kept in the path, or {@link WorldPointUtil#UNDEFINED}
+     * @param arrival  the direction the neighbor was jumped to in, or {@link CollisionMap#NO_DIRECTION}
+     */
+    private void addNeighbor(NodeArena side, int node, int neighbor, int cost, boolean isTransport, int via, int arrival) {
+        int position = side.getPosition(node);
+        boolean backward = side == backwardArena;
+        int from = via != WorldPointUtil.UNDEFINED ? via : backward ? neighbor : position;
+        if (config.avoidWilderness(from, backward ? position : neighbor, targetPacked)) {
             return;
         }
 
-        if (visited.add(neighbor)) {
-            Node n = new Node(neighbor, node, target, wait);
-            if (n.isTransport()) {
-                pending.add(n);
-            } else {
-                boundary.add(n);
+        int viaCost = via == WorldPointUtil.UNDEFINED ? 0 : 1;
+        int newCost = side.getCost(node) + viaCost + cost;
+        if (corridor != null && !config.getRegionGraph().isInCorridor(corridor, neighbor)) {
+            leaveOut(backward ? ~node : node, newCost + (backward ? heuristicFromStart(neighbor) : heuristic(neighbor)));
+            return;
+        }
+        int n = side.nodes.get(neighbor);
+        if (n != NodeArena.NONE && newCost >= side.getCost(n)) {
+            if (newCost == side.getCost(n) && side.getArrival(n) != arrival && side.getArrival(n) != CollisionMap.NO_DIRECTION) {
+                // a jump only goes on in the ways its direction could not have reached for less, which differ
+                // for a tile jumped to as quickly in another direction, so it goes on every way instead
+                side.setArrival(n, CollisionMap.NO_DIRECTION);
+                if (!side.boundary.contains(n)) {
+                    side.boundary.add(n);
+                }
+            }
+            return;
+        }
+
+        int parent = node;
+        if (via != WorldPointUtil.UNDEFINED) {
+            parent = side.add(via, node, side.getCost(node) + viaCost, NodeArena.NONE, false);
+        }
+
+        if (n == NodeArena.NONE) {
+            n = side.add(neighbor, parent, newCost, newCost + (backward ? heuristicFromStart(neighbor) : heuristic(neighbor)), isTransport);
+            side.nodes.put(neighbor, n);
+            side.boundary.add(n);
+        } else if (side.boundary.contains(n)) {
+            side.update(n, parent, newCost, isTransport);
+            side.boundary.decreaseKey(n);
+        } else {
+            // the landmark bounds are taken between regions and are not consistent, so a visited tile can be improved on
+            side.update(n, parent, newCost, isTransport);
+            side.boundary.add(n);
+        }
+        side.setArrival(n, arrival);
+
+        if (backwardArena != null) {
+            NodeArena other = backward ? arena : backwardArena;
+            int m = other.nodes.get(neighbor);
+            if (m != NodeArena.NONE && newCost + other.getCost(m) < meetingCost) {
+                meetingCost = newCost + other.getCost(m);
+                meetingTile = neighbor;
             }
         }
     }
 
-    private void addNeighbor(Node node, WorldPoint neighbor, int wait, int distance, boolean isTransport ) {
-        if (config.avoidWilderness(node.position, neighbor, target)) {
+    /**
+     * Keeps a node with a step left out of the corridor, and the least travel time of a path through the step
+     */
+    private void leaveOut(int entry, int bound) {
+        corridorBound = Math.min(corridorBound, bound);
+        // the steps of a node are added together, so it is only kept once for each time it is expanded
+        if (leftOutCount > 0 && leftOut[leftOutCount - 1] == entry) {
             return;
         }
+        if (leftOutCount == leftOut.length) {
+            leftOut = Arrays.copyOf(leftOut, leftOutCount * 2);
+        }
+        leftOut[leftOutCount++] = entry;
+    }
 
-        if (visited.add(neighbor)) {
-            Node n = new Node(neighbor, node, target, wait, distance, isTransport);
-            if (n.isTransport()) {
-                pending.add(n);
+    /**
+     * Lets the search go on past the corridor, by expanding the nodes with steps left out of it again
+     * @return  whether the search was kept to a corridor
+     */
+    private boolean leaveCorridor() {
+        if (corridor == null) {
+            return false;
+        }
+        corridor = null;
+        corridorBound = Integer.MAX_VALUE;
+        // the networks are entered again, as the stations outside the corridor were left out
+        Arrays.fill(networkCosts, Integer.MAX_VALUE);
+        Arrays.fill(backwardNetworkCosts, Integer.MAX_VALUE);
+        int startNode = arena.nodes.get(startPacked);
+        for (Transport teleport : teleports) {
+            addNeighbor(startNode, WorldPointUtil.packWorldPoint(teleport.getDestination()), getCost(teleport), true);
+        }
+        for (int i = 0; i < leftOutCount; i++) {
+            if (leftOut[i] >= 0) {
+                addNeighbors(leftOut[i]);
             } else {
-                boundary.add(n);
+                addPredecessors(~leftOut[i]);
             }
         }
+        leftOutCount = 0;
+        return true;
     }
 
-    private void addNeighbors(Node node) {
-        for (OrdinalDirection direction : OrdinalDirection.values()) {
-            for (Transport transport : config.getTransports().getOrDefault(node.position.dx(direction.x).dy(direction.y), new ArrayList<>())) {
-                WorldPoint origin = transport.getOrigin();
-                if (config.useTransport(transport) && config.getMap().isBlocked(origin.getX(), origin.getY(), origin.getPlane())) {
-                    addNeighbor(new Node(origin, node, target), transport.getDestination(), transport.getWait());
-                }
+    private void addNeighbors(int node) {
+        int position = arena.getPosition(node);
+        if (jumping) {
+            addJumps(node);
+        } else {
+            int neighborCount = config.getMap().getNeighbors(position, neighbors);
+            for (int i = 0; i < neighborCount; i++) {
+                addNeighbor(node, neighbors[i], 1, false);
             }
         }
 
-        for (WorldPoint neighbor : config.getMap().getNeighbors(node.position)) {
-            addNeighbor(node, neighbor, 0);
+        EdgeIndex edges = transportGraph.getEdges(false);
+        int row = edges.find(position);
+        if (row != EdgeIndex.NONE) {
+            for (int edge = edges.start(row); edge < edges.end(row); edge++) {
+                // the cost of an edge through a blocked origin already includes the extra step
+                int via = edges.via(edge);
+                int viaCost = via == WorldPointUtil.UNDEFINED ? 0 : 1;
+                addNeighbor(arena, node, edges.tile(edge), edges.cost(edge) - viaCost, true, via, CollisionMap.NO_DIRECTION);
+            }
         }
+        addNetworkNeighbors(arena, node, networkCosts);
+    }
 
-        for (Transport transport : config.getTransports().getOrDefault(node.position, new ArrayList<>())) {
-            if (config.useTransport(transport)) {
-                addNeighbor(node, transport.getDestination(), transport.getWait());
+    /**
+     * Adds the tiles jumped to from a node in each direction a quickest path could go on in from there, which is
+     * every way from a tile reached by a transport, reached as quickly from two directions, or made a jump point
+     */
+    private void addJumps(int node) {
+        int position = arena.getPosition(node);
+        int x = WorldPointUtil.unpackWorldX(position);
+        int y = WorldPointUtil.unpackWorldY(position);
+        int z = WorldPointUtil.unpackWorldPlane(position);
+        CollisionMap map = config.getMap();
+        int arrival = map.isForcedJumpPoint(position) ? CollisionMap.NO_DIRECTION : arena.getArrival(node);
+        int moves = map.getCanonicalMoves(x, y, z, arrival);
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if ((moves & (1 << d)) == 0) {
+                continue;
+            }
+            int jumpPoint = jump(x, y, z, d);
+            if (jumpPoint != WorldPointUtil.UNDEFINED) {
+                addNeighbor(arena, node, jumpPoint, WorldPointUtil.distanceBetween2D(position, jumpPoint), false,
+                    WorldPointUtil.UNDEFINED, d);
             }
         }
+    }
 
-        for (Transport transport : config.getTemporaryTransports().getOrDefault(node.position, new ArrayList<>())) {
-            if (config.useTransport(transport)) {
-                if(transport.isArdyClock()) {
-                    addNeighbor(node, transport.getDestination(), transport.getWait(), 30, false);
-                }
-                else {
-                    addNeighbor(node, transport.getDestination(), transport.getWait());
+    /**
+     * Jumps from a tile in a direction to the next tile a quickest path could turn at: a jump point of the map,
+     * a goal or a tile a goal is straight on from in part of the direction, or the first tile past the region
+     * the jump layers end at
+     * @return  the tile jumped to, or {@link WorldPointUtil#UNDEFINED} if the way ends at a wall first
+     */
+    private int jump(int x, int y, int z, int direction) {
+        OrdinalDirection step = DIRECTIONS[direction];
+        int jump = config.getMap().getJump(x, y, z, direction);
+        int steps = jump & CollisionMap.JUMP_DISTANCE;
+        int goalSteps = stepsToGoal(x, y, z, step);
+        if (goalSteps <= steps) {
+            return WorldPointUtil.packWorldPoint(x + step.x * goalSteps, y + step.y * goalSteps, z);
+        }
+        x += step.x * steps;
+        y += step.y * steps;
+        if ((jump & CollisionMap.JUMP_POINT) != 0) {
+            return WorldPointUtil.packWorldPoint(x, y, z);
+        }
+        if ((config.getMap().getTraversable(x, y, z) & (1 << direction)) == 0) {
+            return WorldPointUtil.UNDEFINED;
+        }
+        return WorldPointUtil.packWorldPoint(x + step.x, y + step.y, z);
+    }
+
+    /**
+     * The fewest steps from a tile in a direction to a goal, or for a diagonal direction to where a goal is level
+     * with the jump and further on along the other axis, or {@link Integer#MAX_VALUE} if no goal is that way
+     */
+    private int stepsToGoal(int x, int y, int z, OrdinalDirection step) {
+        int fewest = Integer.MAX_VALUE;
+        for (int goal : goals) {
+            if (WorldPointUtil.unpackWorldPlane(goal) != z) {
+                continue;
+            }
+            int stepsX = (WorldPointUtil.unpackWorldX(goal) - x) * step.x;
+            int stepsY = (WorldPointUtil.unpackWorldY(goal) - y) * step.y;
+            int steps;
+            if (step.x == 0) {
+                steps = WorldPointUtil.unpackWorldX(goal) == x ? stepsY : 0;
+            } else if (step.y == 0) {
+                steps = WorldPointUtil.unpackWorldY(goal) == y ? stepsX : 0;
+            } else {
+                steps = Math.min(stepsX, stepsY);
+            }
+            if (steps >= 1) {
+                fewest = Math.min(fewest, steps);
+            }
+        }
+        return fewest;
+    }
+
+    /**
+     * Adds the tiles leading to a node of the backward search: those walked from, and the transports arriving there
+     */
+    private void addPredecessors(int node) {
+        int position = backwardArena.getPosition(node);
+        int x = WorldPointUtil.unpackWorldX(position);
+        int y = WorldPointUtil.unpackWorldY(position);
+        int z = WorldPointUtil.unpackWorldPlane(position);
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int fromX = x - DIRECTIONS[d].x;
+            int fromY = y - DIRECTIONS[d].y;
+            if ((config.getMap().getTraversable(fromX, fromY, z) & (1 << d)) != 0) {
+                addNeighbor(backwardArena, node, WorldPointUtil.packWorldPoint(fromX, fromY, z), 1, false,
+                    WorldPointUtil.UNDEFINED, CollisionMap.NO_DIRECTION);
+            }
+        }
+
+        EdgeIndex edges = transportGraph.getEdges(true);
+        int row = edges.find(position);
+        if (row != EdgeIndex.NONE) {
+            for (int edge = edges.start(row); edge < edges.end(row); edge++) {
+                // the cost of an edge through a blocked origin already includes the extra step
+                int via = edges.via(edge);
+                int viaCost = via == WorldPointUtil.UNDEFINED ? 0 : 1;
+                addNeighbor(backwardArena, node, edges.tile(edge), edges.cost(edge) - viaCost, true, via, CollisionMap.NO_DIRECTION);
+            }
+        }
+        addNetworkNeighbors(backwardArena, node, backwardNetworkCosts);
+    }
+
+    /**
+     * Adds the stations of the networks entered from a node, or searching backwards the ways into the networks
+     * left at it. They are only added when the node enters a network for less than it has been entered for before,
+     * as otherwise they have already been reached for less.
+     */
+    private void addNetworkNeighbors(NodeArena side, int node, int[] enteredCosts) {
+        int position = side.getPosition(node);
+        boolean backward = side == backwardArena;
+        EdgeIndex entries = transportGraph.getNetworkEntries(backward);
+        int row = entries.find(position);
+        if (row == EdgeIndex.NONE) {
+            return;
+        }
+        EdgeIndex exits = transportGraph.getNetworkExits(backward);
+        for (int entry = entries.start(row); entry < entries.end(row); entry++) {
+            int network = entries.tile(entry);
+            int entryVia = entries.via(entry);
+            int from = entryVia != WorldPointUtil.UNDEFINED ? entryVia : position;
+            int index = network * 2 + (PathfinderConfig.isInWilderness(from) ? 1 : 0);
+            int cost = side.getCost(node) + entries.cost(entry);
+            if (cost >= enteredCosts[index]) {
+                continue;
+            }
+            enteredCosts[index] = cost;
+            int exitRow = exits.find(network);
+            for (int exit = exits.start(exitRow); exit < exits.end(exitRow); exit++) {
+                if (TransportGraph.isLoop(position, entryVia, exits.tile(exit), exits.via(exit))) {
+                    continue;
                 }
+                int via = entryVia != WorldPointUtil.UNDEFINED ? entryVia : exits.via(exit);
+                int viaCost = via == WorldPointUtil.UNDEFINED ? 0 : 1;
+                addNeighbor(side, node, exits.tile(exit), entries.cost(entry) + exits.cost(exit) - viaCost, true, via,
+                    CollisionMap.NO_DIRECTION);
             }
         }
+    }
+
+    /**
+     * The travel time of a transport is its additional wait, but never less than a single step
+     */
+    static int getCost(Transport transport) {
+        return Math.max(1, transport.getWait());
+    }
 
+    private void publishPath(int node) {
+        publishPath(node, NodeArena.NONE);
     }
 
-    private long getLowestHeuristic(List<Node> data) {
-        long lowest = Integer.MAX_VALUE;
-        for (Node n : data) {
-            if (n.heuristic < lowest) {
-                lowest = n.heuristic;
+    /**
+     * @param backwardNode  the node of the backward search at the same tile, which the path continues
+     *                      to the target from, or {@link NodeArena#NONE}
+     */
+    private void publishPath(int node, int backwardNode) {
+        int length = arena.getPath(node);
+        int[] packedPath = arena.getPathBuffer();
+        List<WorldPoint> result = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            result.add(WorldPointUtil.unpackWorldPoint(packedPath[i]));
+        }
+        if (backwardNode != NodeArena.NONE) {
+            // finding the path can grow the buffer, so it is only taken afterwards
+            int backwardLength = backwardArena.getPath(backwardNode);
+            packedPath = backwardArena.getPathBuffer();
+            for (int i = backwardLength - 2; i >= 0; i--) {
+                result.add(WorldPointUtil.unpackWorldPoint(packedPath[i]));
             }
         }
-        return lowest == Integer.MAX_VALUE ? -1 : lowest;
+        path = result;
     }
 
     @Override
     public void run() {
-        boundary.add(new Node(start, null, target));
+        if (cancelled) {
+            return;
+        }
+        arena = config.acquireArena();
+        try {
+            search();
+            if (complete && !cancelled && targets.size() == 1) {
+                config.cachePath(WorldPointUtil.packWorldPoint(target), transports, globalTeleports, path);
+            }
+            result.complete(path);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            config.releaseArena(arena);
+            arena = null;
+            if (backwardArena != null) {
+                config.releaseArena(backwardArena);
+                backwardArena = null;
+            }
+        }
+    }
+
+    private void search() {
+        startPacked = WorldPointUtil.packWorldPoint(start);
+        transports = config.getUsableTransports();
+        transportGraph = config.getTransportGraph(transports);
+        globalTeleports = config.getGlobalTeleports();
+        teleports = new ArrayList<>();
+        for (Transport teleport : globalTeleports) {
+            teleports.add(teleport.from(start));
+        }
+        startTransports = transports;
+        if (!teleports.isEmpty()) {
+            startTransports = new ArrayList<>(transports);
+            startTransports.addAll(teleports);
+        }
+        if (targets.size() == 1) {
+            List<WorldPoint> cachedPath = config.getCachedPath(startPacked, WorldPointUtil.packWorldPoint(target), transports, globalTeleports);
+            if (cachedPath != null) {
+                path = cachedPath;
+                return;
+            }
+        }
+        if (!findGoals()) {
+            // nothing near the targets can be reached, searching would only run until the cutoff
+            path = Collections.singletonList(start);
+            return;
+        }
+        if (cancelled) {
+            return;
+        }
+
+        // a search towards the same target before this one leaves the travel times to it, which lead back from a detour
+        DistanceField targetField = goals.length == 1 ? config.getTargetField(targetPacked, transports) : null;
+        int fieldDistance = targetField == null ? DistanceField.UNREACHED : targetField.expandUntil(startPacked, TARGET_FIELD_EXTENSION);
+        if (fieldDistance != DistanceField.UNREACHED) {
+            // a teleport can only be quicker if the field has already settled where it leads
+            Transport quickest = null;
+            for (Transport teleport : teleports) {
+                int distance = targetField.getDistance(WorldPointUtil.packWorldPoint(teleport.getDestination()));
+                if (distance != DistanceField.UNREACHED && getCost(teleport) + distance < fieldDistance) {
+                    quickest = teleport;
+                    fieldDistance = getCost(teleport) + distance;
+                }
+            }
+            List<WorldPoint> fieldPath = targetField.getPath(quickest == null ? startPacked :
+                WorldPointUtil.packWorldPoint(quickest.getDestination()));
+            if (fieldPath != null) {
+                if (quickest != null) {
+                    fieldPath.add(0, start);
+                }
+                path = fieldPath;
+                target = goalTargets[0];
+                complete = true;
+                return;
+            }
+        }
+
+        bounds = new Landmarks.Bounds[goals.length];
+        transportBounds = new int[goals.length];
+        for (int i = 0; i < goals.length; i++) {
+            if (goals.length <= MAXIMUM_BOUNDED_TARGETS) {
+                bounds[i] = config.getLandmarks().getBounds(startPacked, goals[i], startTransports);
+            }
+            transportBounds[i] = Integer.MAX_VALUE;
+            for (Transport transport : startTransports) {
+                transportBounds[i] = Math.min(transportBounds[i],
+                    getCost(transport) + WorldPointUtil.distanceBetween2D(WorldPointUtil.packWorldPoint(transport.getDestination()), goals[i]));
+            }
+        }
 
-        Node nearest = boundary.get(0);
-        long bestDistance = Integer.MAX_VALUE;
-        Instant cutoffTime = Instant.now().plus(PathfinderConfig.CALCULATION_CUTOFF);
+        // the abstract path leads to one target only
+        corridor = goals.length == 1 ? config.getRegionGraph().findCorridor(startPacked, targetPacked, startTransports) : null;
+        if (goals.length == 1 && config.isSearchBothWays()) {
+            prepareBackwardSearch();
+        }
+        // the jumps only lead forwards, so the search from the target walks each step
+        jumping = config.isJumpPointSearch() && backwardArena == null;
+        if (cancelled) {
+            return;
+        }
+        findPath();
+    }
 
-        while (!boundary.isEmpty()) {
-            Node node = boundary.remove(0);
+    /**
+     * Sets up searching backwards from the target over the transports arriving at each tile, as well as forwards
+     */
+    private void prepareBackwardSearch() {
+        backwardArena = config.acquireArena();
+        // the landmarks leave out the teleports from anywhere, which would shorten the travel time to every tile
+        startBounds = teleports.isEmpty() ? config.getLandmarks().getBoundsFrom(startPacked, transports) : null;
+        startTransportBound = Integer.MAX_VALUE;
+        for (Transport transport : startTransports) {
+            startTransportBound = Math.min(startTransportBound,
+                WorldPointUtil.distanceBetween2D(startPacked, WorldPointUtil.packWorldPoint(transport.getOrigin())) + getCost(transport));
+        }
+    }
 
-            if (pending.size() > 0) {
-                Node p = pending.get(0);
-                if (p.heuristic < getLowestHeuristic(boundary)) {
-                    boundary.add(0, p);
-                    pending.remove(p);
+    /**
+     * Finds the nearest reachable tile to each target. When avoiding the wilderness, the targets in it are left
+     * out unless there are no others, even from a start in the wilderness: a search applies one rule to every
+     * step into it, which depends on whether the goals are in it.
+     * @return  whether any target can be reached
+     */
+    private boolean findGoals() {
+        WorldPoint[] candidates = targets.toArray(new WorldPoint[0]);
+        int[] packedTargets = new int[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            packedTargets[i] = WorldPointUtil.packWorldPoint(candidates[i]);
+        }
+        int[] reachable = config.getComponents().nearestReachable(startPacked, packedTargets, startTransports);
+
+        List<Integer> kept = new ArrayList<>();
+        List<Integer> inWilderness = new ArrayList<>();
+        for (int i = 0; i < reachable.length; i++) {
+            if (reachable[i] != WorldPointUtil.UNDEFINED) {
+                (config.isAvoidWilderness() && PathfinderConfig.isInWilderness(reachable[i]) ? inWilderness : kept).add(i);
+            }
+        }
+        if (kept.isEmpty()) {
+            kept = inWilderness;
+        }
+        if (kept.isEmpty()) {
+            return false;
+        }
+
+        goals = new int[kept.size()];
+        goalTargets = new WorldPoint[kept.size()];
+        for (int i = 0; i < goals.length; i++) {
+            goals[i] = reachable[kept.get(i)];
+            goalTargets[i] = candidates[kept.get(i)];
+        }
+        sortedGoals = goals.clone();
+        Arrays.sort(sortedGoals);
+        targetPacked = goals[0];
+        return true;
+    }
+
+    /**
+     * Searches for the path, first within the corridor if there is one. The path found there is only taken if
+     * no step left out of the corridor could lead to a quicker one; otherwise, or if the corridor does not lead
+     * to the target, the search goes on past it from those steps. The corridor then only saves the tiles outside
+     * it that the landmark bounds alone would not rule out, but the path is always the quickest.
+     * @return  whether the search stopped at a target, because the player moved away or because it was
+     *          cancelled, rather than running out of tiles or time and settling for the nearest tile found
+     */
+    private boolean findPath() {
+        corridorBound = Integer.MAX_VALUE;
+        leftOutCount = 0;
+        networkCosts = new int[transportGraph.getNetworkCount() * 2];
+        Arrays.fill(networkCosts, Integer.MAX_VALUE);
+        backwardNetworkCosts = networkCosts.clone();
+        int startNode = arena.add(startPacked, NodeArena.NONE, 0, heuristic(startPacked), false);
+        arena.nodes.put(startPacked, startNode);
+        arena.boundary.add(startNode);
+        meetingCost = Integer.MAX_VALUE;
+        if (backwardArena != null) {
+            int targetNode = backwardArena.add(targetPacked, NodeArena.NONE, 0, heuristicFromStart(targetPacked), false);
+            backwardArena.nodes.put(targetPacked, targetNode);
+            backwardArena.boundary.add(targetNode);
+        }
+        // the teleports from anywhere are only of use at the start, so they are added once instead of at every tile
+        for (Transport teleport : teleports) {
+            addNeighbor(startNode, WorldPointUtil.packWorldPoint(teleport.getDestination()), getCost(teleport), true);
+        }
+
+        int nearest = startNode;
+        long bestDistance = Long.MAX_VALUE;
+        long cutoffDuration = PathfinderConfig.CALCULATION_CUTOFF.toNanos();
+        long cutoffTime = System.nanoTime() + cutoffDuration;
+        long nextPathUpdate = System.nanoTime();
+        boolean stopped = false;
+        expandedCount = 0;
+
+        while (!arena.boundary.isEmpty() || (leaveCorridor() && !arena.boundary.isEmpty())) {
+            if (++expandedCount % EXPANSION_BATCH == 0) {
+                if (cancelled) {
+                    return true;
+                }
+                if (System.nanoTime() >= cutoffTime) {
+                    break;
                 }
             }
 
-            if (node.position.equals(target) || !config.isNear(start)) {
-                path = node.getPath();
+            if (backwardArena != null) {
+                if (backwardArena.boundary.isEmpty() && meetingCost == Integer.MAX_VALUE) {
+                    if (leaveCorridor()) {
+                        continue;
+                    }
+                    // nothing that leads to the target can be reached
+                    break;
+                }
+                int forwardBound = arena.getPriority(arena.boundary.peek());
+                int backwardBound = backwardArena.boundary.isEmpty() ? Integer.MAX_VALUE :
+                    backwardArena.getPriority(backwardArena.boundary.peek());
+                if (meetingCost <= Math.max(forwardBound, backwardBound)) {
+                    if (meetingCost > corridorBound) {
+                        leaveCorridor();
+                        continue;
+                    }
+                    // every path through a tile that either search has yet to settle takes at least as long
+                    settle(targetPacked, meetingCost);
+                    publishPath(arena.nodes.get(meetingTile), backwardArena.nodes.get(meetingTile));
+                    return true;
+                }
+                if (!backwardArena.boundary.isEmpty() && backwardArena.boundary.size() < arena.boundary.size()) {
+                    int node = backwardArena.boundary.poll();
+                    addPredecessors(node);
+                    continue;
+                }
+            }
+
+            int node = arena.boundary.poll();
+            int position = arena.getPosition(node);
+
+            boolean reached = isGoal(position);
+            if (reached && arena.getCost(node) > corridorBound) {
+                // the target is settled again once the tiles past the corridor that could lead to it quicker are
+                arena.boundary.add(node);
+                leaveCorridor();
+                continue;
+            }
+            if (reached) {
+                settle(position, arena.getCost(node));
+            }
+            if (reached || !config.isNear(start)) {
+                nearest = node;
+                stopped = true;
                 break;
             }
 
-            long distance = node.heuristic;
+            long distance = distanceToGoals(position);
             if (distance < bestDistance) {
-                path = node.getPath();
                 nearest = node;
                 bestDistance = distance;
-                cutoffTime = Instant.now().plus(PathfinderConfig.CALCULATION_CUTOFF);
-            }
-
-            if (Instant.now().isAfter(cutoffTime)) {
-                path = nearest.getPath();
-                break;
+                long now = System.nanoTime();
+                cutoffTime = now + cutoffDuration;
+                if (now >= nextPathUpdate) {
+                    publishPath(nearest);
+                    nextPathUpdate = now + PATH_UPDATE_INTERVAL;
+                }
             }
 
             addNeighbors(node);
         }
 
-        done = true;
-        boundary.clear();
-        visited.clear();
-        pending.clear();
+        publishPath(nearest);
+        return stopped;
+    }
+
+    int getExpandedCount() {
+        return expandedCount;
+    }
+
+    private void settle(int position, int cost) {
+        complete = true;
+        for (int i = 0; i < goals.length; i++) {
+            if (goals[i] == position) {
+                target = goalTargets[i];
+                break;
+            }
+        }
+        if (goals.length == 1) {
+            config.prepareTargetField(targetPacked, transports, cost + TARGET_FIELD_MARGIN);
+        }
     }
 }
@@ -1,9 +1,20 @@
 package shortestpath.pathfinder;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.time.Duration;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import lombok.Getter;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
@@ -15,46 +26,183 @@ import net.runelite.api.coords.WorldPoint;
 import shortestpath.ShortestPathConfig;
 import shortestpath.ShortestPathPlugin;
 import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
 
 public class PathfinderConfig {
     public static final Duration CALCULATION_CUTOFF = Duration.ofSeconds(10);
     private static final WorldArea WILDERNESS_ABOVE_GROUND = new WorldArea(2944, 3523, 448, 448, 0);
     private static final WorldArea WILDERNESS_UNDERGROUND = new WorldArea(2944, 9918, 320, 442, 0);
+    private static final int MAXIMUM_IDLE_ARENAS = 2;
 
     @Getter
     private final CollisionMap map;
+    /** The transports by origin, which are replaced rather than changed when they are loaded again */
     @Getter
-    private final Map<WorldPoint, List<Transport>> transports;
+    private volatile Map<WorldPoint, List<Transport>> transports;
     @Getter
-    private final Map<WorldPoint, List<Transport>> temporaryTransports;
+    private final ComponentIndex components;
+    @Getter
+    private final RegionGraph regionGraph;
+    @Getter
+    private final Landmarks landmarks;
     private final Client client;
     private final ShortestPathConfig config;
     private final ShortestPathPlugin plugin;
+    private final Deque<NodeArena> arenas = new ArrayDeque<>();
+    private DistanceField targetField;
+    @Getter
+    private volatile DistanceField playerField;
+    private int playerFieldRadius;
+    private List<Transport> playerFieldTransports;
+    private final RouteCache routes = new RouteCache();
+    /** The transports that can currently be used, filtered again whenever what decides them changes */
+    private volatile List<Transport> usableTransports = Collections.emptyList();
+    /** The teleports from anywhere that can currently be used, filtered along with the usable transports */
+    private volatile List<Transport> globalTeleports = Collections.emptyList();
+    /** The edges of the usable transports, built by the first search that uses them */
+    private volatile TransportGraph usableTransportGraph;
+    /** Runs one search at a time, so a search that was superseded has to stop before the next one starts */
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(daemonThreads("shortest-path-search-%d"));
+    /** Builds the indexes used to speed up searches */
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(daemonThreads("shortest-path-index-%d"));
+    /**
+     * Expand the travel times from the player and to the target, each on its own thread, so that neither waits
+     * for the indexes to be built or for the other
+     */
+    private final ExecutorService playerFieldExecutor = Executors.newSingleThreadExecutor(daemonThreads("shortest-path-player-%d"));
+    private final ExecutorService targetFieldExecutor = Executors.newSingleThreadExecutor(daemonThreads("shortest-path-target-%d"));
 
+    @Getter
     private boolean avoidWilderness;
+    @Getter
+    private boolean searchBothWays;
+    @Getter
+    private boolean jumpPointSearch;
     private boolean useAgilityShortcuts;
     private boolean useGrappleShortcuts;
     private boolean useBoats;
     private boolean useCanoes;
     private boolean checkForAxeBeforeUsingCanoe;
     private boolean useFairyRings;
+    /** Whether Fairytale II has been started, as of the last time the quests were checked */
+    private boolean fairyRingsUnlocked;
     private boolean useTeleports;
-    private int agilityLevel;
-    private int rangedLevel;
-    private int strengthLevel;
-    private int prayerLevel;
-    private int woodcuttingLevel;
-    private Map<Quest, QuestState> questStates = new HashMap<>();
+    private boolean hasAxe;
+    private boolean useArdyCloak;
+    /** The skills that any transport requires a level in */
+    private final Set<Skill> requiredSkills = EnumSet.noneOf(Skill.class);
+    /** The boosted level of each required skill, by skill ordinal */
+    private final int[] skillLevels = new int[Skill.values().length];
+    /** The quests that have been finished, by quest ordinal */
+    private final BitSet finishedQuests = new BitSet();
+    /** The transport categories that may be used, as a mask of the category bits of {@link Transport} */
+    private int usableCategories;
 
     public PathfinderConfig(CollisionMap map, Map<WorldPoint, List<Transport>> transports, Client client,
                             ShortestPathConfig config, ShortestPathPlugin plugin) {
         this.map = map;
         this.transports = transports;
-        this.temporaryTransports = new HashMap<>();
+        this.components = new ComponentIndex(map);
+        this.regionGraph = new RegionGraph(map);
+        this.landmarks = new Landmarks(map, backgroundExecutor);
         this.client = client;
         this.config = config;
         this.plugin = plugin;
+        findRequiredSkills();
+        forceJumpPoints();
         refresh();
+        compileTransports();
+
+        // the indexes are built from a copy, as transports can be added to the map on the client thread meanwhile
+        List<Transport> all = new ArrayList<>();
+        transports.values().forEach(all::addAll);
+        backgroundExecutor.execute(() -> {
+            components.build();
+            regionGraph.build(all);
+            landmarks.build(all);
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    /**
+     * Queues a search to run after the searches submitted before it
+     */
+    void submit(Pathfinder pathfinder) {
+        searchExecutor.execute(pathfinder);
+    }
+
+    /**
+     * Stops the running search, index build and travel time expansions, and discards any queued ones
+     */
+    public void shutDown() {
+        searchExecutor.shutdownNow();
+        backgroundExecutor.shutdownNow();
+        playerFieldExecutor.shutdownNow();
+        targetFieldExecutor.shutdownNow();
+    }
+
+    /**
+     * Replaces the transports with ones loaded again, on the client thread. The map they were in before is left
+     * as it was, as a search or index build can still be going through it.
+     */
+    public void setTransports(Map<WorldPoint, List<Transport>> transports) {
+        this.transports = transports;
+        findRequiredSkills();
+        forceJumpPoints();
+    }
+
+    private void findRequiredSkills() {
+        requiredSkills.clear();
+        for (List<Transport> origin : transports.values()) {
+            for (Transport transport : origin) {
+                requiredSkills.addAll(transport.getRequiredSkills());
+            }
+        }
+    }
+
+    /**
+     * Makes the jump point search stop where steps can lead somewhere other than the tiles around them, or be
+     * ruled out: the tiles transports are used from, including those next to each origin in case it is blocked,
+     * and the tiles along either side of the edge of the wilderness
+     */
+    private void forceJumpPoints() {
+        Set<Integer> tiles = new HashSet<>();
+        for (List<Transport> origin : transports.values()) {
+            for (Transport transport : origin) {
+                WorldPoint point = transport.getOrigin();
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        tiles.add(WorldPointUtil.packWorldPoint(point.getX() + dx, point.getY() + dy, point.getPlane()));
+                    }
+                }
+            }
+        }
+        addEdgeTiles(tiles, WILDERNESS_ABOVE_GROUND);
+        addEdgeTiles(tiles, WILDERNESS_UNDERGROUND);
+        map.setForcedJumpPoints(tiles);
+    }
+
+    /**
+     * Adds the tiles along the inside and the outside of the edge of an area
+     */
+    private static void addEdgeTiles(Set<Integer> tiles, WorldArea area) {
+        for (int grow = 0; grow <= 1; grow++) {
+            int minX = area.getX() - grow;
+            int minY = area.getY() - grow;
+            int maxX = area.getX() + area.getWidth() - 1 + grow;
+            int maxY = area.getY() + area.getHeight() - 1 + grow;
+            for (int x = minX; x <= maxX; x++) {
+                tiles.add(WorldPointUtil.packWorldPoint(x, minY, area.getPlane()));
+                tiles.add(WorldPointUtil.packWorldPoint(x, maxY, area.getPlane()));
+            }
+            for (int y = minY; y <= maxY; y++) {
+                tiles.add(WorldPointUtil.packWorldPoint(minX, y, area.getPlane()));
+                tiles.add(WorldPointUtil.packWorldPoint(maxX, y, area.getPlane()));
+            }
+        }
     }
 
     public void refresh() {
@@ -62,6 +210,8 @@ public class PathfinderConfig {
             return;
         }
         avoidWilderness = config.avoidWilderness();
+        searchBothWays = config.searchBothWays();
+        jumpPointSearch = config.jumpPointSearch();
         useAgilityShortcuts = config.useAgilityShortcuts();
         useGrappleShortcuts = config.useGrappleShortcuts();
         useBoats = config.useBoats();
@@ -69,107 +219,247 @@ public class PathfinderConfig {
         checkForAxeBeforeUsingCanoe = config.checkForAxeBeforeUsingCanoes();
         useFairyRings = config.useFairyRings();
         useTeleports = config.useTeleports();
-        agilityLevel = client.getBoostedSkillLevel(Skill.AGILITY);
-        rangedLevel = client.getBoostedSkillLevel(Skill.RANGED);
-        strengthLevel = client.getBoostedSkillLevel(Skill.STRENGTH);
-        prayerLevel = client.getBoostedSkillLevel(Skill.PRAYER);
-        woodcuttingLevel = client.getBoostedSkillLevel(Skill.WOODCUTTING);
+        for (Skill skill : requiredSkills) {
+            skillLevels[skill.ordinal()] = client.getBoostedSkillLevel(skill);
+        }
+        hasAxe = checkForAxeBeforeUsingCanoe && plugin.playerHasAxe();
+        useArdyCloak = config.useArdyCloak() && (!config.checkArdyCloak() || plugin.playerHasArdyCloak());
+        compileTransports();
         plugin.getClientThread().invokeLater(this::refreshQuests);
     }
 
+    /**
+     * Whether a skill changing to a level can change the usable transports, which is when a transport
+     * requires the skill and the level differs from the one they were last filtered with
+     */
+    public boolean affectsTransports(Skill skill, int boostedLevel) {
+        return requiredSkills.contains(skill) && skillLevels[skill.ordinal()] != boostedLevel;
+    }
+
     private void refreshQuests() {
-        useFairyRings &= !QuestState.NOT_STARTED.equals(Quest.FAIRYTALE_II__CURE_A_QUEEN.getState(client));
+        fairyRingsUnlocked = !QuestState.NOT_STARTED.equals(Quest.FAIRYTALE_II__CURE_A_QUEEN.getState(client));
         for (Map.Entry<WorldPoint, List<Transport>> entry : transports.entrySet()) {
             for (Transport transport : entry.getValue()) {
                 if (transport.isQuestLocked()) {
                     try {
-                        questStates.put(transport.getQuest(), transport.getQuest().getState(client));
+                        finishedQuests.set(transport.getQuest().ordinal(),
+                            QuestState.FINISHED.equals(transport.getQuest().getState(client)));
                     } catch (NullPointerException ignored) {
                     }
                 }
             }
         }
+        compileTransports();
     }
 
-    private boolean isInWilderness(WorldPoint p) {
-        return WILDERNESS_ABOVE_GROUND.distanceTo(p) == 0 || WILDERNESS_UNDERGROUND.distanceTo(p) == 0;
+    /**
+     * Takes a node arena for a search, reusing one left by a previous search when available
+     */
+    public synchronized NodeArena acquireArena() {
+        NodeArena arena = arenas.poll();
+        return arena != null ? arena : new NodeArena();
     }
 
-    public boolean avoidWilderness(WorldPoint position, WorldPoint neighbor, WorldPoint target) {
-        return avoidWilderness && !isInWilderness(position) && isInWilderness(neighbor) && !isInWilderness(target);
+    public synchronized void releaseArena(NodeArena arena) {
+        arena.clear();
+        if (arenas.size() < MAXIMUM_IDLE_ARENAS) {
+            arenas.push(arena);
+        }
     }
 
-    public boolean isNear(WorldPoint location) {
-        if (plugin.isStartPointSet() || client.getLocalPlayer() == null) {
-            return true;
+    /**
+     * The travel times to a target kept from an earlier search towards it, brought up to date with the
+     * transports in use, or null
+     */
+    synchronized DistanceField getTargetField(int packedTarget, List<Transport> transports) {
+        if (targetField == null || !targetField.isFor(packedTarget, avoidWilderness)) {
+            return null;
         }
-        return config.recalculateDistance() < 0 ||
-               client.getLocalPlayer().getWorldLocation().distanceTo2D(location) <= config.recalculateDistance();
+        return targetField.update(getTransportGraph(transports)) ? targetField : null;
     }
 
-    public boolean useTransport(Transport transport) {
-        final int transportAgilityLevel = transport.getRequiredLevel(Skill.AGILITY);
-        final int transportRangedLevel = transport.getRequiredLevel(Skill.RANGED);
-        final int transportStrengthLevel = transport.getRequiredLevel(Skill.STRENGTH);
-        final int transportPrayerLevel = transport.getRequiredLevel(Skill.PRAYER);
-        final int transportWoodcuttingLevel = transport.getRequiredLevel(Skill.WOODCUTTING);
-
-        final boolean isAgilityShortcut = transport.isAgilityShortcut();
-        final boolean isGrappleShortcut = transport.isGrappleShortcut();
-        final boolean isBoat = transport.isBoat();
-        final boolean isFairyRing = transport.isFairyRing();
-        final boolean isTeleport = transport.isTeleport();
-        final boolean isCanoe = isBoat && transportWoodcuttingLevel > 1;
-        final boolean isPrayerLocked = transportPrayerLevel > 1;
-        final boolean isQuestLocked = transport.isQuestLocked();
-
-        if (isAgilityShortcut) {
-            if (!useAgilityShortcuts || agilityLevel < transportAgilityLevel) {
-                return false;
+    /**
+     * Starts finding the travel times to a target in the background, so that later searches towards it
+     * can follow them instead of searching again
+     * @param maximumDistance  the travel time to find them up to, which can be extended on demand
+     */
+    synchronized void prepareTargetField(int packedTarget, List<Transport> transports, int maximumDistance) {
+        if (getTargetField(packedTarget, transports) == null) {
+            if (targetField != null) {
+                targetField.discard();
             }
+            targetField = new DistanceField(map, getTransportGraph(transports), packedTarget, true, avoidWilderness);
+        }
+        DistanceField field = targetField;
+        if (!targetFieldExecutor.isShutdown()) {
+            targetFieldExecutor.execute(() -> field.expandTo(maximumDistance));
+        }
+    }
 
-            if (isGrappleShortcut && (!useGrappleShortcuts || rangedLevel < transportRangedLevel || strengthLevel < transportStrengthLevel)) {
-                return false;
-            }
+    /**
+     * The rest of a path found before from a start to a target with the same transports and teleports, or null
+     */
+    List<WorldPoint> getCachedPath(int packedStart, int packedTarget, List<Transport> transports,
+                                   List<Transport> globalTeleports) {
+        return routes.get(packedStart, packedTarget, transports, globalTeleports, avoidWilderness);
+    }
+
+    void cachePath(int packedTarget, List<Transport> transports, List<Transport> globalTeleports, List<WorldPoint> path) {
+        routes.put(packedTarget, transports, globalTeleports, avoidWilderness, path);
+    }
+
+    /**
+     * Starts finding the travel times from the player's location to the tiles around it in the background,
+     * unless they have already been found from there
+     * @param radius  the travel time in ticks to find them up to
+     */
+    public synchronized void refreshPlayerField(WorldPoint location, int radius) {
+        int packedLocation = WorldPointUtil.packWorldPoint(location);
+        List<Transport> usable = getUsableTransports();
+        if (playerField != null && playerField.isFor(packedLocation, avoidWilderness) && playerFieldRadius == radius &&
+            usable.equals(playerFieldTransports)) {
+            return;
+        }
+        clearPlayerField();
+        DistanceField field = new DistanceField(map, getTransportGraph(usable), packedLocation, false, avoidWilderness);
+        playerField = field;
+        playerFieldRadius = radius;
+        playerFieldTransports = usable;
+        if (!playerFieldExecutor.isShutdown()) {
+            playerFieldExecutor.execute(() -> field.expandTo(radius));
         }
+    }
 
-        if (isBoat) {
-            if (!useBoats) {
-                return false;
-            }
+    /**
+     * Drops the travel times from the player when they are no longer shown
+     */
+    public synchronized void clearPlayerField() {
+        if (playerField != null) {
+            playerField.discard();
+            playerField = null;
         }
+    }
 
-        if (isCanoe) {
-            if (!useCanoes) {
-                return false;
-            }
+    /**
+     * The transports that can currently be used, as of the last refresh
+     */
+    public List<Transport> getUsableTransports() {
+        return usableTransports;
+    }
 
-            if (woodcuttingLevel < transportWoodcuttingLevel) {
-                return false;
-            }
+    /**
+     * The teleports that can currently be used from anywhere, which have no origin, as of the last refresh
+     */
+    public List<Transport> getGlobalTeleports() {
+        return globalTeleports;
+    }
 
-            if (checkForAxeBeforeUsingCanoe && !plugin.playerHasAxe())
-            {
-                return false;
-            }
+    /**
+     * The edges of a list of transports, which for the usable transports are only built once
+     */
+    TransportGraph getTransportGraph(List<Transport> transports) {
+        TransportGraph graph = usableTransportGraph;
+        if (graph != null && graph.getTransports() == transports) {
+            return graph;
         }
-
-        if (isFairyRing && !useFairyRings) {
-            return false;
+        graph = new TransportGraph(map, transports);
+        if (transports == usableTransports) {
+            usableTransportGraph = graph;
         }
+        return graph;
+    }
 
-        if (isTeleport && !useTeleports) {
-            return false;
+    /**
+     * Filters the transports for the current settings, levels, quests and items. The result replaces the
+     * usable transports in one step and is never changed, so a search keeps using the list it started with.
+     * Quests are checked later on the client thread, so until then the quest states of the previous check
+     * are used. When nothing changed the previous lists are kept, along with the edges built for them.
+     */
+    private void compileTransports() {
+        usableCategories = usableCategories();
+        List<Transport> usable = new ArrayList<>();
+        for (List<Transport> origin : transports.values()) {
+            for (Transport transport : origin) {
+                if (useTransport(transport)) {
+                    usable.add(transport);
+                }
+            }
+        }
+        List<Transport> teleports = new ArrayList<>();
+        for (Transport teleport : Transport.getGlobalTeleports()) {
+            if (useTransport(teleport)) {
+                teleports.add(teleport);
+            }
+        }
+        if (!teleports.equals(globalTeleports)) {
+            globalTeleports = Collections.unmodifiableList(teleports);
+        }
+        if (!usable.equals(usableTransports)) {
+            usableTransports = Collections.unmodifiableList(usable);
         }
+    }
+
+    static boolean isInWilderness(int packedPoint) {
+        return isInArea(WILDERNESS_ABOVE_GROUND, packedPoint) || isInArea(WILDERNESS_UNDERGROUND, packedPoint);
+    }
 
-        if (isPrayerLocked && prayerLevel < transportPrayerLevel) {
-            return false;
+    private static boolean isInArea(WorldArea area, int packedPoint) {
+        int x = WorldPointUtil.unpackWorldX(packedPoint);
+        int y = WorldPointUtil.unpackWorldY(packedPoint);
+        return WorldPointUtil.unpackWorldPlane(packedPoint) == area.getPlane() &&
+            x >= area.getX() && x < area.getX() + area.getWidth() &&
+            y >= area.getY() && y < area.getY() + area.getHeight();
+    }
+
+    public boolean avoidWilderness(int packedPosition, int packedNeighbor, int packedTarget) {
+        return avoidWilderness && entersWilderness(packedPosition, packedNeighbor, packedTarget);
+    }
+
+    /**
+     * Whether a step goes into the wilderness from outside it while the target is outside it
+     */
+    static boolean entersWilderness(int packedPosition, int packedNeighbor, int packedTarget) {
+        return !isInWilderness(packedPosition) && isInWilderness(packedNeighbor) && !isInWilderness(packedTarget);
+    }
+
+    public boolean isNear(WorldPoint location) {
+        if (plugin.isStartPointSet() || client.getLocalPlayer() == null) {
+            return true;
         }
+        return config.recalculateDistance() < 0 ||
+               client.getLocalPlayer().getWorldLocation().distanceTo2D(location) <= config.recalculateDistance();
+    }
 
-        if (isQuestLocked && !QuestState.FINISHED.equals(questStates.getOrDefault(transport.getQuest(), QuestState.NOT_STARTED))) {
-            return false;
+    /**
+     * The transport categories that the settings and items allow, as a mask of the category bits of
+     * {@link Transport}
+     */
+    private int usableCategories() {
+        int categories = useArdyCloak ? Transport.ARDY_CLOAK : 0;
+        if (useAgilityShortcuts) {
+            categories |= Transport.AGILITY_SHORTCUT;
+        }
+        if (useGrappleShortcuts) {
+            categories |= Transport.GRAPPLE_SHORTCUT;
+        }
+        if (useBoats) {
+            categories |= Transport.BOAT;
         }
+        if (useCanoes && (!checkForAxeBeforeUsingCanoe || hasAxe)) {
+            categories |= Transport.CANOE;
+        }
+        if (useFairyRings && fairyRingsUnlocked) {
+            categories |= Transport.FAIRY_RING;
+        }
+        if (useTeleports) {
+            categories |= Transport.TELEPORT;
+        }
+        return categories;
+    }
 
-        return true;
+    public boolean useTransport(Transport transport) {
+        return (transport.getCategories() & ~usableCategories) == 0 &&
+            transport.hasRequiredLevels(skillLevels) &&
+            (!transport.isQuestLocked() || finishedQuests.get(transport.getQuest().ordinal()));
     }
 }
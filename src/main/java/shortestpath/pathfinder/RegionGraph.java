@@ -0,0 +1,487 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+/**
+ * An abstract graph over the regions of a collision map, used to find the regions a long path runs through
+ * before searching for it tile by tile (hierarchical pathfinding).
+ * <p>
+ * The nodes of the graph are region entrances, a tile on each side of a run of tiles that can be walked across
+ * a region border, and the origins of transports. The nodes in a region are linked by their walking distance
+ * within the region, which is worked out in the background for every transport origin when the graph is built,
+ * and otherwise the first time the region is expanded with an origin that was left out. The walking distances
+ * from the other tiles a search expands, mostly transport destinations, are kept for the most recent few per region.
+ * Entrances are linked to the tile across the border, and transport origins to the transport destinations.
+ */
+public class RegionGraph {
+    private static final int MAXIMUM_ENTRANCE_WIDTH = 16;
+    private static final int MAXIMUM_EXPANSIONS = 100_000;
+    private static final int MAXIMUM_CACHED_WALKS = 32;
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+    private static final int[] NO_ORIGINS = new int[0];
+
+    private final CollisionMap map;
+    private final int regionSize;
+    private final int regionsPerAxis;
+    private final int regionsX;
+    private final int regionsY;
+
+    @Getter
+    private volatile boolean ready;
+    /** The entrances of each region plane, as pairs of the tile in the region and the tile across the border */
+    private int[][] entrances;
+    private final Map<Integer, Region> regions = new ConcurrentHashMap<>();
+
+    public RegionGraph(CollisionMap map) {
+        this.map = map;
+        regionSize = map.getRegionSize();
+        regionsPerAxis = 0x7FFF / regionSize + 1;
+        regionsX = map.getDataRegionsX();
+        regionsY = map.getDataRegionsY();
+    }
+
+    /**
+     * Finds the entrances of every region, then the walking distances between the entrances and transport
+     * origins of each region so that searches do not have to walk the regions they expand
+     * @param transports  the transports whose origins to include, normally every transport
+     */
+    public void build(Collection<Transport> transports) {
+        List<List<Integer>> found = new ArrayList<>();
+        for (int i = 0; i < regionsX * regionsY * FlagMap.PLANE_COUNT; i++) {
+            found.add(new ArrayList<>());
+        }
+
+        for (int rx = 0; rx < regionsX; rx++) {
+            for (int ry = 0; ry < regionsY; ry++) {
+                if (!map.hasRegionData(rx, ry)) {
+                    continue;
+                }
+                for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+                    if (map.hasRegionData(rx + 1, ry)) {
+                        findEntrances(found, rx, ry, z, OrdinalDirection.EAST);
+                    }
+                    if (map.hasRegionData(rx, ry + 1)) {
+                        findEntrances(found, rx, ry, z, OrdinalDirection.NORTH);
+                    }
+                }
+            }
+        }
+
+        int[][] result = new int[found.size()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = found.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        entrances = result;
+        ready = true;
+
+        Map<Integer, int[]> originsByRegion = originsByRegion(transports);
+        for (int regionPlane = 0; regionPlane < result.length; regionPlane++) {
+            int[] origins = originsByRegion.getOrDefault(regionPlane, NO_ORIGINS);
+            if (result[regionPlane].length > 0 || origins.length > 0) {
+                getRegion(regionPlane, origins);
+            }
+        }
+    }
+
+    /**
+     * The distinct origins of the transports in each region plane, in ascending order
+     */
+    private Map<Integer, int[]> originsByRegion(Collection<Transport> transports) {
+        Map<Integer, Set<Integer>> originSets = new HashMap<>();
+        for (Transport transport : transports) {
+            int origin = WorldPointUtil.packWorldPoint(transport.getOrigin());
+            originSets.computeIfAbsent(regionPlaneIndex(origin), k -> new TreeSet<>()).add(origin);
+        }
+        Map<Integer, int[]> originsByRegion = new HashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : originSets.entrySet()) {
+            originsByRegion.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return originsByRegion;
+    }
+
+    /**
+     * Adds an entrance for every run of tiles that can be walked across the east or north border of a region,
+     * splitting long runs so that paths along the border are not forced through a single tile
+     */
+    private void findEntrances(List<List<Integer>> found, int rx, int ry, int z, OrdinalDirection direction) {
+        int runStart = -1;
+        for (int i = 0; i <= regionSize; i++) {
+            boolean crossable = i < regionSize &&
+                (map.getTraversable(borderX(rx, i, direction), borderY(ry, i, direction), z) & (1 << direction.ordinal())) != 0;
+            if (crossable && runStart < 0) {
+                runStart = i;
+            } else if (!crossable && runStart >= 0) {
+                for (int start = runStart; start < i; start += MAXIMUM_ENTRANCE_WIDTH) {
+                    int middle = (start + Math.min(i, start + MAXIMUM_ENTRANCE_WIDTH) - 1) / 2;
+                    int x = borderX(rx, middle, direction);
+                    int y = borderY(ry, middle, direction);
+                    int inside = WorldPointUtil.packWorldPoint(x, y, z);
+                    int across = WorldPointUtil.packWorldPoint(x + direction.x, y + direction.y, z);
+                    List<Integer> here = found.get(regionPlaneIndex(rx, ry, z));
+                    here.add(inside);
+                    here.add(across);
+                    List<Integer> there = found.get(regionPlaneIndex(rx + direction.x, ry + direction.y, z));
+                    there.add(across);
+                    there.add(inside);
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private int borderX(int rx, int i, OrdinalDirection direction) {
+        return rx * regionSize + (direction == OrdinalDirection.EAST ? regionSize - 1 : i);
+    }
+
+    private int borderY(int ry, int i, OrdinalDirection direction) {
+        return ry * regionSize + (direction == OrdinalDirection.NORTH ? regionSize - 1 : i);
+    }
+
+    /**
+     * Searches the abstract graph for the regions a path from a start to a target runs through, and the regions
+     * bordering them. The abstract path is the quickest path between entrances rather than tiles, so the quickest
+     * path between the tiles can still leave the corridor; searches kept to a corridor have to check for that.
+     * @param transports  the transports that may be used
+     * @return  the regions, to be checked with {@link #isInCorridor}, or null if the graph has not been built yet,
+     *          the target is close enough to search for directly or the abstract graph has no path to it
+     */
+    public BitSet findCorridor(int packedStart, int packedTarget, Collection<Transport> transports) {
+        if (!ready || WorldPointUtil.distanceBetween(packedStart, packedTarget) <= 2 * regionSize) {
+            return null;
+        }
+
+        Map<Integer, List<Transport>> transportsByOrigin = new HashMap<>();
+        for (Transport transport : transports) {
+            transportsByOrigin.computeIfAbsent(WorldPointUtil.packWorldPoint(transport.getOrigin()), k -> new ArrayList<>()).add(transport);
+        }
+        Map<Integer, int[]> originsByRegion = originsByRegion(transports);
+
+        int targetRegion = regionPlaneIndex(packedTarget);
+        int[] targetDistances = null;
+        if (targetRegion >= 0 && !map.isBlocked(unpackX(packedTarget), unpackY(packedTarget), unpackZ(packedTarget))) {
+            targetDistances = walk(packedTarget);
+        }
+
+        Map<Integer, Integer> costs = new HashMap<>();
+        Map<Integer, Integer> parents = new HashMap<>();
+        Set<Integer> closed = new HashSet<>();
+        PriorityQueue<Long> open = new PriorityQueue<>();
+        costs.put(packedStart, 0);
+        open.add(queueEntry(0, packedStart));
+
+        for (int expansions = 0; !open.isEmpty() && expansions < MAXIMUM_EXPANSIONS; expansions++) {
+            int node = (int) (long) open.poll();
+            if (!closed.add(node)) {
+                continue;
+            }
+            if (node == packedTarget) {
+                BitSet corridor = new BitSet();
+                for (Integer n = node; n != null; n = parents.get(n)) {
+                    addRegionAndBorders(corridor, n);
+                }
+                return corridor;
+            }
+
+            int g = costs.get(node);
+            int regionPlane = regionPlaneIndex(node);
+            if (regionPlane >= 0) {
+                Region region = getRegion(regionPlane, originsByRegion.getOrDefault(regionPlane, NO_ORIGINS));
+                int[] distances = region.distancesFromTile(node);
+                for (int i = 0; i < region.portals.length; i++) {
+                    // the region can include the origins of transports that are not in use
+                    boolean usable = region.partners[i] != WorldPointUtil.UNDEFINED || transportsByOrigin.containsKey(region.portals[i]);
+                    if (usable && distances[i] != UNREACHABLE) {
+                        relax(costs, parents, open, node, region.portals[i], g + distances[i], packedTarget);
+                    }
+                    if (region.portals[i] == node && region.partners[i] != WorldPointUtil.UNDEFINED) {
+                        relax(costs, parents, open, node, region.partners[i], g + 1, packedTarget);
+                    }
+                }
+                if (regionPlane == targetRegion && targetDistances != null) {
+                    int distance = distanceToTarget(node, targetDistances);
+                    if (distance != UNREACHABLE) {
+                        relax(costs, parents, open, node, packedTarget, g + distance, packedTarget);
+                    }
+                }
+            }
+
+            for (Transport transport : transportsByOrigin.getOrDefault(node, new ArrayList<>())) {
+                int destination = WorldPointUtil.packWorldPoint(transport.getDestination());
+                relax(costs, parents, open, node, destination, g + Pathfinder.getCost(transport), packedTarget);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the region of a tile on the abstract path to a corridor, along with the regions bordering it. The walking
+     * distances of the abstract graph are only between entrances, so the quickest path can cross a corner of a
+     * region next to the abstract path, or take a different entrance into the next region.
+     */
+    private void addRegionAndBorders(BitSet corridor, int packedPoint) {
+        int rx = unpackX(packedPoint) / regionSize;
+        int ry = unpackY(packedPoint) / regionSize;
+        for (int x = Math.max(0, rx - 1); x <= Math.min(regionsPerAxis - 1, rx + 1); x++) {
+            for (int y = Math.max(0, ry - 1); y <= Math.min(regionsPerAxis - 1, ry + 1); y++) {
+                corridor.set(x * regionsPerAxis + y);
+            }
+        }
+    }
+
+    /**
+     * Whether a tile lies in one of the regions of a corridor
+     */
+    public boolean isInCorridor(BitSet corridor, int packedPoint) {
+        return corridor.get(regionIndex(packedPoint));
+    }
+
+    private static void relax(Map<Integer, Integer> costs, Map<Integer, Integer> parents, PriorityQueue<Long> open,
+                              int node, int neighbor, int cost, int packedTarget) {
+        Integer known = costs.get(neighbor);
+        if (known == null || cost < known) {
+            costs.put(neighbor, cost);
+            parents.put(neighbor, node);
+            open.add(queueEntry(cost + WorldPointUtil.distanceBetween2D(neighbor, packedTarget), neighbor));
+        }
+    }
+
+    private static long queueEntry(int priority, int packedPoint) {
+        return ((long) priority << 32) | (packedPoint & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The walking distance from a tile to the target, given the walking distances from the target within its region.
+     * Walking between walkable tiles goes both ways, but a blocked tile can only be walked out of.
+     */
+    private int distanceToTarget(int packedPoint, int[] targetDistances) {
+        int x = unpackX(packedPoint);
+        int y = unpackY(packedPoint);
+        int z = unpackZ(packedPoint);
+        int distance = targetDistances[localIndex(x, y)];
+        if (distance != UNREACHABLE || !map.isBlocked(x, y, z)) {
+            return distance;
+        }
+
+        int best = UNREACHABLE;
+        int traversable = map.getTraversable(x, y, z);
+        for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+            int nx = x + DIRECTIONS[d].x;
+            int ny = y + DIRECTIONS[d].y;
+            if ((traversable & 1) != 0 && isInSameRegion(x, y, nx, ny) && targetDistances[localIndex(nx, ny)] != UNREACHABLE) {
+                best = Math.min(best, targetDistances[localIndex(nx, ny)] + 1);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The nodes of a region plane, which are kept and reused as long as they include the given transport origins
+     * @param transportOrigins  the transport origins in the region plane, in ascending order
+     */
+    private Region getRegion(int regionPlane, int[] transportOrigins) {
+        Region region = regions.get(regionPlane);
+        if (region == null) {
+            region = new Region(entrances[regionPlane], transportOrigins);
+            regions.put(regionPlane, region);
+        } else if (!includesAll(region.transportOrigins, transportOrigins)) {
+            region = new Region(entrances[regionPlane], union(region.transportOrigins, transportOrigins));
+            regions.put(regionPlane, region);
+        }
+        return region;
+    }
+
+    private static boolean includesAll(int[] sorted, int[] values) {
+        for (int value : values) {
+            if (Arrays.binarySearch(sorted, value) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] union(int[] first, int[] second) {
+        Set<Integer> union = new TreeSet<>();
+        Arrays.stream(first).forEach(union::add);
+        Arrays.stream(second).forEach(union::add);
+        return union.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The walking distances from a tile to every tile of its region plane, without leaving the region
+     */
+    private int[] walk(int packedPoint) {
+        int x = unpackX(packedPoint);
+        int y = unpackY(packedPoint);
+        int z = unpackZ(packedPoint);
+        byte[] layer = map.getTraversableLayer(x, y);
+        int planeOffset = z * regionSize * regionSize;
+
+        int[] distances = new int[regionSize * regionSize];
+        Arrays.fill(distances, UNREACHABLE);
+        int[] queue = new int[distances.length];
+        int source = localIndex(x, y);
+        distances[source] = 0;
+        queue[0] = source;
+        for (int head = 0, tail = 1; head < tail; head++) {
+            int tile = queue[head];
+            int tx = tile % regionSize;
+            int ty = tile / regionSize;
+            int traversable = layer[planeOffset + tile] & 0xFF;
+            for (int d = 0; traversable != 0; d++, traversable >>>= 1) {
+                if ((traversable & 1) == 0) {
+                    continue;
+                }
+                int nx = tx + DIRECTIONS[d].x;
+                int ny = ty + DIRECTIONS[d].y;
+                if (nx < 0 || ny < 0 || nx >= regionSize || ny >= regionSize) {
+                    continue;
+                }
+                int next = ny * regionSize + nx;
+                if (distances[next] == UNREACHABLE) {
+                    distances[next] = distances[tile] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    private int localIndex(int x, int y) {
+        return Math.floorMod(y, regionSize) * regionSize + Math.floorMod(x, regionSize);
+    }
+
+    private boolean isInSameRegion(int x, int y, int otherX, int otherY) {
+        return Math.floorDiv(x, regionSize) == Math.floorDiv(otherX, regionSize) &&
+            Math.floorDiv(y, regionSize) == Math.floorDiv(otherY, regionSize);
+    }
+
+    private int regionIndex(int packedPoint) {
+        return (unpackX(packedPoint) / regionSize) * regionsPerAxis + unpackY(packedPoint) / regionSize;
+    }
+
+    /**
+     * The index of the region plane of a tile, or -1 for tiles outside the regions with data
+     */
+    private int regionPlaneIndex(int packedPoint) {
+        int rx = unpackX(packedPoint) / regionSize;
+        int ry = unpackY(packedPoint) / regionSize;
+        return rx < regionsX && ry < regionsY ? regionPlaneIndex(rx, ry, unpackZ(packedPoint)) : -1;
+    }
+
+    private int regionPlaneIndex(int rx, int ry, int z) {
+        return (rx * regionsY + ry) * FlagMap.PLANE_COUNT + z;
+    }
+
+    private static int unpackX(int packedPoint) {
+        return WorldPointUtil.unpackWorldX(packedPoint);
+    }
+
+    private static int unpackY(int packedPoint) {
+        return WorldPointUtil.unpackWorldY(packedPoint);
+    }
+
+    private static int unpackZ(int packedPoint) {
+        return WorldPointUtil.unpackWorldPlane(packedPoint);
+    }
+
+    /**
+     * The nodes of a region plane and the walking distances between them
+     */
+    private class Region {
+        private final int[] transportOrigins;
+        private final int[] portals;
+        /** The tile across the border for each entrance, or {@link WorldPointUtil#UNDEFINED} for transport origins */
+        private final int[] partners;
+        private final Map<Integer, Integer> portalIndex = new HashMap<>();
+        private final int[][] distances;
+        /** The walking distances to the nodes from other tiles walked from, such as transport destinations */
+        private final Map<Integer, int[]> walkCache = new LinkedHashMap<Integer, int[]>(MAXIMUM_CACHED_WALKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > MAXIMUM_CACHED_WALKS;
+            }
+        };
+
+        Region(int[] entrances, int[] transportOrigins) {
+            this.transportOrigins = transportOrigins;
+            int entranceCount = entrances.length / 2;
+            portals = new int[entranceCount + transportOrigins.length];
+            partners = new int[portals.length];
+            for (int i = 0; i < entranceCount; i++) {
+                portals[i] = entrances[2 * i];
+                partners[i] = entrances[2 * i + 1];
+            }
+            for (int i = 0; i < transportOrigins.length; i++) {
+                portals[entranceCount + i] = transportOrigins[i];
+                partners[entranceCount + i] = WorldPointUtil.UNDEFINED;
+            }
+
+            distances = new int[portals.length][];
+            for (int i = 0; i < portals.length; i++) {
+                portalIndex.putIfAbsent(portals[i], i);
+            }
+            for (int i = 0; i < portals.length; i++) {
+                Integer first = portalIndex.get(portals[i]);
+                distances[i] = first < i ? distances[first] : distancesFrom(walk(portals[i]));
+            }
+        }
+
+        /**
+         * The walking distance from a tile of the region to each of its nodes
+         */
+        int[] distancesFromTile(int packedPoint) {
+            Integer portal = portalIndex.get(packedPoint);
+            if (portal != null) {
+                return distances[portal];
+            }
+            synchronized (walkCache) {
+                int[] result = walkCache.get(packedPoint);
+                if (result == null) {
+                    result = distancesFrom(walk(packedPoint));
+                    walkCache.put(packedPoint, result);
+                }
+                return result;
+            }
+        }
+
+        /**
+         * The walking distance to each node of the region, given the walking distances to every tile.
+         * The origin of a transport can be blocked, in which case the transport is used from a tile next to it.
+         */
+        int[] distancesFrom(int[] walked) {
+            int[] result = new int[portals.length];
+            for (int i = 0; i < portals.length; i++) {
+                int x = unpackX(portals[i]);
+                int y = unpackY(portals[i]);
+                int distance = walked[localIndex(x, y)];
+                if (distance == UNREACHABLE && partners[i] == WorldPointUtil.UNDEFINED) {
+                    for (OrdinalDirection direction : DIRECTIONS) {
+                        int nx = x + direction.x;
+                        int ny = y + direction.y;
+                        if (isInSameRegion(x, y, nx, ny) && walked[localIndex(nx, ny)] != UNREACHABLE) {
+                            distance = Math.min(distance, walked[localIndex(nx, ny)] + 1);
+                        }
+                    }
+                }
+                result[i] = distance;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package shortestpath.pathfinder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import net.runelite.api.coords.WorldPoint;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+/**
+ * The paths of finished searches, so that searching again for the same route returns at once.
+ * <p>
+ * Paths are keyed by their target and the transports and teleports that could be used, which reflect the
+ * plugin settings, skill levels and quest states that decide them. As every part of a quickest path is itself
+ * a quickest path, a search starting from any tile of a kept path towards the same target follows the rest of it.
+ * That holds for the teleports from anywhere too, as they take as long from every tile of the path.
+ */
+class RouteCache {
+    /** The most tiles kept over all paths, at four bytes each */
+    private static final long MAXIMUM_TILES = 256 * 1024;
+
+    private final Cache<Key, int[]> paths = CacheBuilder.newBuilder()
+        .maximumWeight(MAXIMUM_TILES)
+        .weigher((Key key, int[] path) -> path.length)
+        .build();
+
+    /**
+     * The rest of a kept path from a start to a target, or null if no kept path passes through the start
+     */
+    List<WorldPoint> get(int packedStart, int packedTarget, List<Transport> transports, List<Transport> globalTeleports,
+                         boolean avoidWilderness) {
+        int[] path = paths.getIfPresent(new Key(packedTarget, transports, globalTeleports, avoidWilderness));
+        if (path == null) {
+            return null;
+        }
+        for (int i = 0; i < path.length; i++) {
+            if (path[i] == packedStart) {
+                List<WorldPoint> rest = new ArrayList<>(path.length - i);
+                for (int j = i; j < path.length; j++) {
+                    rest.add(WorldPointUtil.unpackWorldPoint(path[j]));
+                }
+                return rest;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keeps a path that a search found to a target, replacing the one kept for the same target and transports
+     */
+    void put(int packedTarget, List<Transport> transports, List<Transport> globalTeleports, boolean avoidWilderness,
+             List<WorldPoint> path) {
+        int[] packed = new int[path.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = WorldPointUtil.packWorldPoint(path.get(i));
+        }
+        paths.put(new Key(packedTarget, transports, globalTeleports, avoidWilderness), packed);
+    }
+
+    /**
+     * A target with the lists of transports and teleports a path to it was found with. The lists are kept
+     * unchanged once filtered, and are usually the same lists, which compare at once.
+     */
+    private static class Key {
+        private final int target;
+        private final List<Transport> transports;
+        private final List<Transport> globalTeleports;
+        private final boolean avoidWilderness;
+        private final int hash;
+
+        Key(int target, List<Transport> transports, List<Transport> globalTeleports, boolean avoidWilderness) {
+            this.target = target;
+            this.transports = transports;
+            this.globalTeleports = globalTeleports;
+            this.avoidWilderness = avoidWilderness;
+            this.hash = ((target * 31 + transports.hashCode()) * 31 + globalTeleports.hashCode()) * 2 +
+                (avoidWilderness ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return key.target == target && key.avoidWilderness == avoidWilderness &&
+                key.transports.equals(transports) && key.globalTeleports.equals(globalTeleports);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,54 +1,290 @@
 package shortestpath.pathfinder;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.Weigher;
-import com.google.common.util.concurrent.UncheckedExecutionException;
-import shortestpath.Util;
-
-import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.zip.GZIPInputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Flags for the whole world, split into square regions. The flags are read from a flat, uncompressed
+ * buffer (normally a memory-mapped file) with the layout:
+ * <pre>
+ * int magic, int version, long source checksum,
+ * int region size, int flag count, int regions along x, int regions along y,
+ * int[regions along x * regions along y] region slot (-1 when the region has no data),
+ * the flags of each region slot, {@link FlagMap#byteCount} bytes each
+ * </pre>
+ */
 public abstract class SplitFlagMap {
-    private static final int MAXIMUM_SIZE = 20 * 1024 * 1024;
+    private static final int MAGIC = 0x53504D46;
+    private static final int VERSION = 1;
+    static final int MAXIMUM_SIZE = 32 * 1024 * 1024;
+    /**
+     * How much more the regions may take once jump layers are in use, as a plane of them takes twice the memory of
+     * the rest of a region, and evicting the regions a jump point search still needs has it work them out again
+     */
+    private static final int JUMP_LAYERS_ALLOWANCE = 32 * 1024 * 1024;
+    private static final int MAXIMUM_COORDINATE = 0x7FFF;
     private final int regionSize;
-    private final LoadingCache<Position, FlagMap> regionMaps;
+    private final int regionsPerAxis;
     private final int flagCount;
+    private final ByteBuffer data;
+    private final int dataRegionsX;
+    private final int dataRegionsY;
+    private final int[] dataSlots;
+    private final int dataOffset;
+    private final int regionBytes;
 
-    public SplitFlagMap(int regionSize, Map<Position, byte[]> compressedRegions, int flagCount) {
-        this.regionSize = regionSize;
-        this.flagCount = flagCount;
-        regionMaps = CacheBuilder
-                .newBuilder()
-                .weigher((Weigher<Position, FlagMap>) (k, v) -> v.flags.size() / 8)
-                .maximumWeight(MAXIMUM_SIZE)
-                .build(CacheLoader.from(position -> {
-                    byte[] compressedRegion = compressedRegions.get(position);
+    /**
+     * Loaded regions, indexed directly by region coordinates. Empty slots are loaded lazily;
+     * concurrent loads of the same slot race with a compare-and-set and the loser uses the winner's region.
+     */
+    private final AtomicReferenceArray<FlagMap> regionMaps;
+    private final Queue<Integer> loadedRegions = new ConcurrentLinkedQueue<>();
+    private final AtomicLong loadedSize = new AtomicLong();
+    private volatile long maximumSize = MAXIMUM_SIZE;
 
-                    if (compressedRegion == null) {
-                        return new FlagMap(position.x * regionSize, position.y * regionSize, (position.x + 1) * regionSize - 1, (position.y + 1) * regionSize - 1, this.flagCount);
-                    }
+    public SplitFlagMap(ByteBuffer data) {
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported flag map format");
+        }
+        this.data = data;
+        regionSize = data.getInt(16);
+        flagCount = data.getInt(20);
+        dataRegionsX = data.getInt(24);
+        dataRegionsY = data.getInt(28);
+        dataSlots = new int[dataRegionsX * dataRegionsY];
+        for (int i = 0; i < dataSlots.length; i++) {
+            dataSlots[i] = data.getInt(32 + i * 4);
+        }
+        dataOffset = 32 + dataSlots.length * 4;
+        regionBytes = FlagMap.byteCount(regionSize, regionSize, flagCount);
+        regionsPerAxis = MAXIMUM_COORDINATE / regionSize + 1;
+        regionMaps = new AtomicReferenceArray<>(regionsPerAxis * regionsPerAxis);
+    }
+
+    /**
+     * The checksum of the source data a flat flag map buffer was written from
+     */
+    public static long readChecksum(ByteBuffer data) {
+        if (data.capacity() < 32 || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            return 0;
+        }
+        return data.getLong(8);
+    }
+
+    /**
+     * Writes regions in the flat flag map format
+     * @param regions  the flags of each region, as written by {@link FlagMap#toBytes()}
+     * @param checksum  a checksum of the source the regions were read from
+     */
+    public static void write(OutputStream outputStream, int regionSize, int flagCount, Map<Position, byte[]> regions, long checksum) throws IOException {
+        int regionsX = 0;
+        int regionsY = 0;
+        for (Position position : regions.keySet()) {
+            regionsX = Math.max(regionsX, position.x + 1);
+            regionsY = Math.max(regionsY, position.y + 1);
+        }
+
+        Position[] slots = regions.keySet().toArray(new Position[0]);
+        int[] slotIndex = new int[regionsX * regionsY];
+        Arrays.fill(slotIndex, -1);
+        for (int i = 0; i < slots.length; i++) {
+            slotIndex[slots[i].x * regionsY + slots[i].y] = i;
+        }
+
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(checksum);
+        out.writeInt(regionSize);
+        out.writeInt(flagCount);
+        out.writeInt(regionsX);
+        out.writeInt(regionsY);
+        for (int index : slotIndex) {
+            out.writeInt(index);
+        }
+
+        int regionBytes = FlagMap.byteCount(regionSize, regionSize, flagCount);
+        byte[] padding = new byte[regionBytes];
+        for (Position slot : slots) {
+            byte[] region = regions.get(slot);
+            int length = Math.min(region.length - 16, regionBytes);
+            out.write(region, 16, length);
+            out.write(padding, 0, regionBytes - length);
+        }
+        out.flush();
+    }
+
+    int getRegionSize() {
+        return regionSize;
+    }
 
-                    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedRegion))) {
-                        return new FlagMap(Util.readAllBytes(in), this.flagCount);
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                }));
+    /**
+     * Whether the region at the given region coordinates has any flags; the tiles of every other region are blocked
+     */
+    boolean hasRegionData(int regionX, int regionY) {
+        return regionX >= 0 && regionY >= 0 && regionX < dataRegionsX && regionY < dataRegionsY &&
+            dataSlots[regionX * dataRegionsY + regionY] >= 0;
+    }
+
+    int getDataRegionsX() {
+        return dataRegionsX;
+    }
+
+    int getDataRegionsY() {
+        return dataRegionsY;
     }
 
     public boolean get(int x, int y, int z, int flag) {
-        try {
-            return regionMaps.get(new Position(x / regionSize, y / regionSize)).get(x, y, z, flag);
-        } catch (ExecutionException e) {
-            throw new UncheckedExecutionException(e);
+        return getRegion(x, y).get(x, y, z, flag);
+    }
+
+    /**
+     * The region containing the given tile
+     */
+    protected FlagMap getRegion(int x, int y) {
+        if (x < 0 || y < 0 || x > MAXIMUM_COORDINATE || y > MAXIMUM_COORDINATE) {
+            return loadRegion(new Position(Math.floorDiv(x, regionSize), Math.floorDiv(y, regionSize)));
+        }
+
+        int index = (x / regionSize) * regionsPerAxis + y / regionSize;
+        FlagMap region = regionMaps.get(index);
+        if (region == null) {
+            region = loadRegion(new Position(x / regionSize, y / regionSize));
+            if (regionMaps.compareAndSet(index, null, region)) {
+                loadedRegions.add(index);
+                long size;
+                synchronized (region) {
+                    region.cached = true;
+                    size = loadedSize.addAndGet(weight(region));
+                }
+                if (size > maximumSize) {
+                    evict();
+                }
+            } else {
+                region = regionMaps.get(index);
+            }
+        }
+        if (!region.referenced) {
+            region.referenced = true;
         }
+        return region;
+    }
+
+    /**
+     * Unloads regions until the loaded size is back under the limit, using the clock algorithm:
+     * regions that have been used since the eviction pass last looked at them get a second chance.
+     */
+    private void evict() {
+        int remaining = loadedRegions.size() * 2;
+        while (loadedSize.get() > maximumSize && remaining-- > 0) {
+            Integer index = loadedRegions.poll();
+            if (index == null) {
+                return;
+            }
+            FlagMap region = regionMaps.get(index);
+            if (region == null) {
+                continue;
+            }
+            if (region.referenced) {
+                region.referenced = false;
+                loadedRegions.add(index);
+            } else if (regionMaps.compareAndSet(index, region, null)) {
+                synchronized (region) {
+                    region.cached = false;
+                    loadedSize.addAndGet(-weight(region));
+                }
+            }
+        }
+    }
+
+    /**
+     * The heap memory used by a loaded region: its per-tile layers, plus its flags when they are not in the shared buffer
+     */
+    private long weight(FlagMap region) {
+        return region.tileCount() + jumpLayersSize(region) + (region.flags == data ? 0 : region.flags.capacity());
+    }
+
+    private static long jumpLayersSize(FlagMap region) {
+        long size = 0;
+        for (byte[] layer : region.jumpLayers) {
+            size += layer == null ? 0 : layer.length;
+        }
+        return size;
+    }
+
+    /**
+     * Gives a plane of a region its jump layer, counting it towards the loaded size
+     * @return  the jump layer of the plane, which is an earlier one if another thread gave it one first
+     */
+    byte[] attachJumpLayer(FlagMap region, int z, byte[] layer) {
+        long size;
+        synchronized (region) {
+            if (region.jumpLayers[z] != null) {
+                return region.jumpLayers[z];
+            }
+            maximumSize = MAXIMUM_SIZE + JUMP_LAYERS_ALLOWANCE;
+            byte[][] layers = region.jumpLayers.clone();
+            layers[z] = layer;
+            region.jumpLayers = layers;
+            size = region.cached ? loadedSize.addAndGet(layer.length) : loadedSize.get();
+        }
+        if (size > maximumSize) {
+            evict();
+        }
+        return layer;
+    }
+
+    /**
+     * Drops the jump layers of a region, so that they are computed again on next use
+     */
+    void dropJumpLayers(FlagMap region) {
+        synchronized (region) {
+            if (region.cached) {
+                loadedSize.addAndGet(-jumpLayersSize(region));
+            }
+            region.jumpLayers = new byte[FlagMap.PLANE_COUNT][];
+        }
+    }
+
+    /**
+     * The region at the given region coordinates if it is loaded, or null
+     */
+    FlagMap getLoadedRegion(int regionX, int regionY) {
+        if (regionX < 0 || regionY < 0 || regionX >= regionsPerAxis || regionY >= regionsPerAxis) {
+            return null;
+        }
+        return regionMaps.get(regionX * regionsPerAxis + regionY);
+    }
+
+    /**
+     * The heap memory counted for the loaded regions
+     */
+    long getLoadedSize() {
+        return loadedSize.get();
+    }
+
+    private FlagMap loadRegion(Position position) {
+        int minX = position.x * regionSize;
+        int minY = position.y * regionSize;
+        int maxX = minX + regionSize - 1;
+        int maxY = minY + regionSize - 1;
+
+        if (position.x >= 0 && position.y >= 0 && position.x < dataRegionsX && position.y < dataRegionsY) {
+            int slot = dataSlots[position.x * dataRegionsY + position.y];
+            if (slot >= 0) {
+                return new FlagMap(data, dataOffset + slot * regionBytes, minX, minY, maxX, maxY, flagCount);
+            }
+        }
+
+        return new FlagMap(minX, minY, maxX, maxY, flagCount);
     }
 
     public static class Position {
@@ -0,0 +1,109 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import shortestpath.WorldPointUtil;
+
+/**
+ * A map from packed world point to int, stored as one int page per 64x64 region and plane.
+ * The index of pages is allocated a column of regions at a time, as a map only ever covers a few areas.
+ * Clearing takes back the pages written to since the last clear and keeps a limited number of them
+ * for the next writes, so a map reused for many searches only holds on to what a typical search needs.
+ */
+public class TileIntMap {
+    private static final int REGION_SHIFT = 6;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final int REGIONS_PER_AXIS = (0x7FFF >> REGION_SHIFT) + 1;
+    /** The most cleared pages kept for reuse, 16 KiB each */
+    static final int MAXIMUM_SPARE_PAGES = 256;
+
+    private final int defaultValue;
+    /** The pages of each region and plane, by region x and then region y */
+    private final int[][][][] columns = new int[REGIONS_PER_AXIS][][][];
+    private final Deque<int[]> sparePages = new ArrayDeque<>();
+    private int[] usedPages = new int[64];
+    private int usedCount;
+
+    public TileIntMap(int defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    public int get(int packedPoint) {
+        int[][][] column = columns[WorldPointUtil.unpackWorldX(packedPoint) >> REGION_SHIFT];
+        if (column == null) {
+            return defaultValue;
+        }
+        int[][] region = column[WorldPointUtil.unpackWorldY(packedPoint) >> REGION_SHIFT];
+        if (region == null) {
+            return defaultValue;
+        }
+        int[] page = region[WorldPointUtil.unpackWorldPlane(packedPoint)];
+        return page == null ? defaultValue : page[tileIndex(packedPoint)];
+    }
+
+    public void put(int packedPoint, int value) {
+        int regionX = WorldPointUtil.unpackWorldX(packedPoint) >> REGION_SHIFT;
+        int regionY = WorldPointUtil.unpackWorldY(packedPoint) >> REGION_SHIFT;
+        int plane = WorldPointUtil.unpackWorldPlane(packedPoint);
+        int[][][] column = columns[regionX];
+        if (column == null) {
+            column = columns[regionX] = new int[REGIONS_PER_AXIS][][];
+        }
+        int[][] region = column[regionY];
+        if (region == null) {
+            region = column[regionY] = new int[FlagMap.PLANE_COUNT][];
+        }
+        int[] page = region[plane];
+        if (page == null) {
+            page = region[plane] = takePage();
+            if (usedCount == usedPages.length) {
+                usedPages = Arrays.copyOf(usedPages, usedCount * 2);
+            }
+            usedPages[usedCount++] = (regionX * REGIONS_PER_AXIS + regionY) * FlagMap.PLANE_COUNT + plane;
+        }
+        page[tileIndex(packedPoint)] = value;
+    }
+
+    public void clear() {
+        for (int i = 0; i < usedCount; i++) {
+            int regionIndex = usedPages[i] / FlagMap.PLANE_COUNT;
+            int[][] region = columns[regionIndex / REGIONS_PER_AXIS][regionIndex % REGIONS_PER_AXIS];
+            int plane = usedPages[i] % FlagMap.PLANE_COUNT;
+            if (sparePages.size() < MAXIMUM_SPARE_PAGES) {
+                Arrays.fill(region[plane], defaultValue);
+                sparePages.push(region[plane]);
+            }
+            region[plane] = null;
+        }
+        usedCount = 0;
+    }
+
+    /**
+     * The number of pages written to since the last clear
+     */
+    int getPageCount() {
+        return usedCount;
+    }
+
+    /**
+     * The number of cleared pages kept for the next writes
+     */
+    int getSparePageCount() {
+        return sparePages.size();
+    }
+
+    private int[] takePage() {
+        int[] page = sparePages.poll();
+        if (page == null) {
+            page = new int[REGION_SIZE * REGION_SIZE];
+            Arrays.fill(page, defaultValue);
+        }
+        return page;
+    }
+
+    private static int tileIndex(int packedPoint) {
+        return (WorldPointUtil.unpackWorldY(packedPoint) & (REGION_SIZE - 1)) * REGION_SIZE
+            + (WorldPointUtil.unpackWorldX(packedPoint) & (REGION_SIZE - 1));
+    }
+}
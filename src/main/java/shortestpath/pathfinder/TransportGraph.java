@@ -0,0 +1,237 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+/**
+ * The edges a set of transports adds to the map, in both directions. A transport with a blocked origin
+ * can be used from any tile next to it for an extra step, which is added as an edge passing through the origin.
+ * <p>
+ * Each edge is stored as {tile, cost, via}, where via is the blocked origin or {@link WorldPointUtil#UNDEFINED},
+ * in an {@link EdgeIndex} keyed by the tile it is found from.
+ * <p>
+ * Networks such as the fairy rings and spirit trees, where every station leads to every other at the same cost,
+ * are kept as the ways into each network and the stations it leads to rather than an edge between every two
+ * stations. An edge through a network joins a way in with a way out, and is never from a station to itself.
+ */
+class TransportGraph {
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+    /** The fewest stations a network is kept as ways in and out for, below which its edges are kept instead */
+    private static final int MINIMUM_NETWORK_STATIONS = 3;
+
+    private final CollisionMap map;
+    private final Collection<Transport> transports;
+    final Map<Long, Integer> transportCosts = new HashMap<>();
+    final Set<Integer> blockedDestinations = new HashSet<>();
+    private final EdgeIndex forward;
+    private final EdgeIndex backward;
+    /** The networks entered from each tile, or on the reversed graph left at it, as {network, cost, via} */
+    private final EdgeIndex forwardEntries;
+    private final EdgeIndex backwardEntries;
+    /** The stations of each network as {tile, 0, undefined}, and the ways into it as {tile, cost, via} */
+    private final EdgeIndex networkStations;
+    private final EdgeIndex networkEntrances;
+    /** The tiles any edge or network entry is found from, in each direction */
+    private final VisitedTiles forwardOrigins = new VisitedTiles();
+    private final VisitedTiles backwardOrigins = new VisitedTiles();
+    private int networkCount;
+    private int maximumCost = 1;
+
+    TransportGraph(CollisionMap map, Collection<Transport> transports) {
+        this.map = map;
+        this.transports = transports;
+        Builders builders = new Builders();
+        Map<Long, Integer> networked = findNetworks(builders, transports);
+        for (Transport transport : transports) {
+            int cost = Pathfinder.getCost(transport);
+            transportCosts.merge(transportKey(transport), cost, Math::min);
+
+            int origin = WorldPointUtil.packWorldPoint(transport.getOrigin());
+            int destination = WorldPointUtil.packWorldPoint(transport.getDestination());
+            Integer networkCost = networked.get(transportKey(transport));
+            if (networkCost == null || networkCost != cost) {
+                addEdge(builders, origin, destination, cost, WorldPointUtil.UNDEFINED);
+                if (isBlocked(origin)) {
+                    for (OrdinalDirection direction : DIRECTIONS) {
+                        addEdge(builders, move(origin, direction), destination, cost + 1, origin);
+                    }
+                }
+            }
+            if (isBlocked(destination)) {
+                blockedDestinations.add(destination);
+            }
+        }
+
+        forward = builders.forward.build(forwardOrigins);
+        backward = builders.backward.build(backwardOrigins);
+        forwardEntries = builders.forwardEntries.build(forwardOrigins);
+        backwardEntries = builders.backwardEntries.build(backwardOrigins);
+        networkStations = builders.stations.build(null);
+        networkEntrances = builders.entrances.build(null);
+    }
+
+    /**
+     * Finds the networks among the transports: the origins that lead at the same cost to the same stations,
+     * apart from themselves. Every transport of a network is left out of the edges, unless it costs more or
+     * less than the network.
+     * @return  the cost of the network each transport key is kept as part of
+     */
+    private Map<Long, Integer> findNetworks(Builders builders, Collection<Transport> transports) {
+        Map<Integer, Map<Integer, Set<Integer>>> destinationsByCost = new HashMap<>();
+        Map<Integer, Set<Integer>> allDestinationsByCost = new HashMap<>();
+        for (Transport transport : transports) {
+            int cost = Pathfinder.getCost(transport);
+            int destination = WorldPointUtil.packWorldPoint(transport.getDestination());
+            destinationsByCost.computeIfAbsent(cost, k -> new HashMap<>())
+                .computeIfAbsent(WorldPointUtil.packWorldPoint(transport.getOrigin()), k -> new HashSet<>())
+                .add(destination);
+            allDestinationsByCost.computeIfAbsent(cost, k -> new HashSet<>()).add(destination);
+        }
+
+        Map<Long, Integer> networked = new HashMap<>();
+        for (Map.Entry<Integer, Map<Integer, Set<Integer>>> byCost : destinationsByCost.entrySet()) {
+            int cost = byCost.getKey();
+            Set<Integer> allDestinations = allDestinationsByCost.get(cost);
+            // an origin which is also a station of its network cannot lead to itself, so it is added back
+            Map<Set<Integer>, List<Integer>> originsByStations = new HashMap<>();
+            for (Map.Entry<Integer, Set<Integer>> byOrigin : byCost.getValue().entrySet()) {
+                Set<Integer> stations = new HashSet<>(byOrigin.getValue());
+                if (allDestinations.contains(byOrigin.getKey())) {
+                    stations.add(byOrigin.getKey());
+                }
+                originsByStations.computeIfAbsent(stations, k -> new ArrayList<>()).add(byOrigin.getKey());
+            }
+
+            for (Map.Entry<Set<Integer>, List<Integer>> network : originsByStations.entrySet()) {
+                if (network.getKey().size() < MINIMUM_NETWORK_STATIONS || network.getValue().size() < MINIMUM_NETWORK_STATIONS) {
+                    continue;
+                }
+                for (int origin : network.getValue()) {
+                    for (int station : network.getKey()) {
+                        if (station != origin) {
+                            networked.put(((long) origin << 32) | (station & 0xFFFFFFFFL), cost);
+                        }
+                    }
+                }
+                addNetwork(builders, network.getValue(), network.getKey(), cost);
+            }
+        }
+        return networked;
+    }
+
+    private void addNetwork(Builders builders, List<Integer> origins, Set<Integer> stations, int cost) {
+        int network = networkCount++;
+        for (int station : stations) {
+            builders.stations.add(network, station, 0, WorldPointUtil.UNDEFINED);
+            builders.backwardEntries.add(station, network, 0, WorldPointUtil.UNDEFINED);
+        }
+        for (int origin : origins) {
+            builders.entrances.add(network, origin, cost, WorldPointUtil.UNDEFINED);
+            builders.forwardEntries.add(origin, network, cost, WorldPointUtil.UNDEFINED);
+            if (isBlocked(origin)) {
+                for (OrdinalDirection direction : DIRECTIONS) {
+                    int from = move(origin, direction);
+                    builders.entrances.add(network, from, cost + 1, origin);
+                    builders.forwardEntries.add(from, network, cost + 1, origin);
+                }
+            }
+        }
+        maximumCost = Math.max(maximumCost, cost + 1);
+    }
+
+    static long transportKey(Transport transport) {
+        return ((long) WorldPointUtil.packWorldPoint(transport.getOrigin()) << 32) |
+            (WorldPointUtil.packWorldPoint(transport.getDestination()) & 0xFFFFFFFFL);
+    }
+
+    static int move(int packedPoint, OrdinalDirection direction) {
+        return WorldPointUtil.packWorldPoint(WorldPointUtil.unpackWorldX(packedPoint) + direction.x,
+            WorldPointUtil.unpackWorldY(packedPoint) + direction.y, WorldPointUtil.unpackWorldPlane(packedPoint));
+    }
+
+    private void addEdge(Builders builders, int from, int to, int cost, int via) {
+        builders.forward.add(from, to, cost, via);
+        builders.backward.add(to, from, cost, via);
+        maximumCost = Math.max(maximumCost, cost);
+    }
+
+    /**
+     * The transports the edges were added for
+     */
+    Collection<Transport> getTransports() {
+        return transports;
+    }
+
+    /**
+     * The edges leaving each tile, or on the reversed graph the edges arriving at each tile
+     */
+    EdgeIndex getEdges(boolean reverse) {
+        return reverse ? backward : forward;
+    }
+
+    /**
+     * The networks entered from each tile as {network, cost, via}, or on the reversed graph those left at each
+     * tile as {network, 0, undefined}. An edge through a network costs the cost of the way in and out together,
+     * and passes through the via of either.
+     */
+    EdgeIndex getNetworkEntries(boolean reverse) {
+        return reverse ? backwardEntries : forwardEntries;
+    }
+
+    /**
+     * The ways out of each network: its stations, or on the reversed graph the ways into it as {tile, cost, via}
+     */
+    EdgeIndex getNetworkExits(boolean reverse) {
+        return reverse ? networkEntrances : networkStations;
+    }
+
+    int getNetworkCount() {
+        return networkCount;
+    }
+
+    /**
+     * Whether joining a way into a network from a tile with a way out would lead from a station to itself
+     */
+    static boolean isLoop(int packedPoint, int entryVia, int exitTile, int exitVia) {
+        int from = entryVia != WorldPointUtil.UNDEFINED ? entryVia : packedPoint;
+        return from == (exitVia != WorldPointUtil.UNDEFINED ? exitVia : exitTile);
+    }
+
+    /**
+     * The highest cost of an edge, which is never less than a single step
+     */
+    int getMaximumCost() {
+        return maximumCost;
+    }
+
+    /**
+     * Whether a path can pass through a tile: it can be walked to, or is the destination of a transport
+     */
+    boolean isPassable(int packedPoint) {
+        return !isBlocked(packedPoint) || blockedDestinations.contains(packedPoint);
+    }
+
+    boolean isBlocked(int packedPoint) {
+        return map.isBlocked(WorldPointUtil.unpackWorldX(packedPoint), WorldPointUtil.unpackWorldY(packedPoint),
+            WorldPointUtil.unpackWorldPlane(packedPoint));
+    }
+
+    /**
+     * The edges being collected while the graph is built
+     */
+    private static class Builders {
+        final EdgeIndex.Builder forward = new EdgeIndex.Builder();
+        final EdgeIndex.Builder backward = new EdgeIndex.Builder();
+        final EdgeIndex.Builder forwardEntries = new EdgeIndex.Builder();
+        final EdgeIndex.Builder backwardEntries = new EdgeIndex.Builder();
+        final EdgeIndex.Builder stations = new EdgeIndex.Builder();
+        final EdgeIndex.Builder entrances = new EdgeIndex.Builder();
+    }
+}
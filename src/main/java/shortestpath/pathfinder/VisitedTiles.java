@@ -0,0 +1,76 @@
+package shortestpath.pathfinder;
+
+import java.util.Arrays;
+import shortestpath.WorldPointUtil;
+
+/**
+ * A set of tiles keyed by packed world point, stored as one bitset page per 64x64 region (all planes).
+ * It marks the tiles the transport edges are found from and the tiles the landmark searches have settled.
+ * Pages are allocated on first use and kept for reuse, so clearing only touches the pages that were
+ * written to since the last clear.
+ */
+public class VisitedTiles {
+    private static final int REGION_SHIFT = 6;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final int REGIONS_PER_AXIS = (0x7FFF >> REGION_SHIFT) + 1;
+    private static final int WORDS_PER_PAGE = REGION_SIZE * REGION_SIZE * FlagMap.PLANE_COUNT / 64;
+
+    private final long[][] pages = new long[REGIONS_PER_AXIS * REGIONS_PER_AXIS][];
+    private final boolean[] touched = new boolean[pages.length];
+    private int[] touchedPages = new int[64];
+    private int touchedCount;
+
+    public boolean get(int packedPoint) {
+        long[] page = pages[pageIndex(packedPoint)];
+        if (page == null) {
+            return false;
+        }
+        int bit = bitIndex(packedPoint);
+        return (page[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return  true if the tile was not already in the set
+     */
+    public boolean add(int packedPoint) {
+        int pageIndex = pageIndex(packedPoint);
+        long[] page = pages[pageIndex];
+        if (page == null) {
+            page = pages[pageIndex] = new long[WORDS_PER_PAGE];
+        }
+        if (!touched[pageIndex]) {
+            touched[pageIndex] = true;
+            if (touchedCount == touchedPages.length) {
+                touchedPages = Arrays.copyOf(touchedPages, touchedCount * 2);
+            }
+            touchedPages[touchedCount++] = pageIndex;
+        }
+        int bit = bitIndex(packedPoint);
+        long mask = 1L << bit;
+        if ((page[bit >>> 6] & mask) != 0) {
+            return false;
+        }
+        page[bit >>> 6] |= mask;
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < touchedCount; i++) {
+            int pageIndex = touchedPages[i];
+            Arrays.fill(pages[pageIndex], 0L);
+            touched[pageIndex] = false;
+        }
+        touchedCount = 0;
+    }
+
+    private static int pageIndex(int packedPoint) {
+        return (WorldPointUtil.unpackWorldX(packedPoint) >> REGION_SHIFT) * REGIONS_PER_AXIS
+            + (WorldPointUtil.unpackWorldY(packedPoint) >> REGION_SHIFT);
+    }
+
+    private static int bitIndex(int packedPoint) {
+        return (WorldPointUtil.unpackWorldPlane(packedPoint) * REGION_SIZE
+            + (WorldPointUtil.unpackWorldY(packedPoint) & (REGION_SIZE - 1))) * REGION_SIZE
+            + (WorldPointUtil.unpackWorldX(packedPoint) & (REGION_SIZE - 1));
+    }
+}
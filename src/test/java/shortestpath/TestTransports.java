@@ -0,0 +1,17 @@
+package shortestpath;
+
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * Transports for tests, made the way they are read from the transport resources
+ */
+public class TestTransports {
+    public static Transport transport(int packedOrigin, int packedDestination, int wait) {
+        return transport(WorldPointUtil.unpackWorldPoint(packedOrigin), WorldPointUtil.unpackWorldPoint(packedDestination), wait);
+    }
+
+    public static Transport transport(WorldPoint origin, WorldPoint destination, int wait) {
+        return new Transport(origin.getX() + " " + origin.getY() + " " + origin.getPlane() + "\t" +
+            destination.getX() + " " + destination.getY() + " " + destination.getPlane() + "\t\t\t\t\t" + wait);
+    }
+}
@@ -0,0 +1,312 @@
+package shortestpath.pathfinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CollisionMapTest {
+    private static final OrdinalDirection[] DIRECTIONS = OrdinalDirection.values();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void extractsTheMapOnceAndAgainWhenTheSourceChanges() throws IOException {
+        File file = new File(folder.getRoot(), "shortest-path/collision-map.dat");
+        byte[] source = source(false);
+        CollisionMap map = CollisionMap.load(source, file);
+        assertTrue(file.isFile());
+        assertEquals(checksum(source), SplitFlagMap.readChecksum(ByteBuffer.wrap(Files.readAllBytes(file.toPath()))));
+        assertFlags(map, false);
+
+        // the file is mapped as it is while the source stays the same
+        assertTrue(file.setLastModified(1000));
+        assertFlags(CollisionMap.load(source, file), false);
+        assertEquals(1000, file.lastModified());
+
+        byte[] changed = source(true);
+        assertFlags(CollisionMap.load(changed, file), true);
+        assertEquals(checksum(changed), SplitFlagMap.readChecksum(ByteBuffer.wrap(Files.readAllBytes(file.toPath()))));
+        assertEquals(1, folder.getRoot().toPath().resolve("shortest-path").toFile().list().length);
+    }
+
+    @Test
+    public void keepsTheMapOnTheHeapWhenTheFileCannotBeWritten() throws IOException {
+        // the directory the file would go in is a file
+        File file = new File(folder.newFile("shortest-path"), "collision-map.dat");
+        CollisionMap map = CollisionMap.load(source(true), file);
+        assertFalse(file.exists());
+        assertFlags(map, true);
+    }
+
+    @Test
+    public void traversalMaskMatchesTheRulesForEachDirection() {
+        for (long seed = 0; seed < 3; seed++) {
+            // more than a region across, with the tiles just outside the map, which have no flags
+            CollisionMap map = TestMaps.randomFlags(80, 72, seed);
+            for (int x = TestMaps.MIN_X - 1; x <= TestMaps.MIN_X + 80; x++) {
+                for (int y = TestMaps.MIN_Y - 1; y <= TestMaps.MIN_Y + 72; y++) {
+                    assertEquals("seed " + seed + " at " + x + ", " + y, traversable(map, x, y), map.getTraversable(x, y, 0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void listsTheNeighborsInTheTraversalMask() {
+        CollisionMap map = TestMaps.randomFlags(80, 72, 3);
+        int[] neighbors = new int[8];
+        for (int x = TestMaps.MIN_X; x < TestMaps.MIN_X + 80; x++) {
+            for (int y = TestMaps.MIN_Y; y < TestMaps.MIN_Y + 72; y++) {
+                int count = map.getNeighbors(WorldPointUtil.packWorldPoint(x, y, 0), neighbors);
+                int expected = traversable(map, x, y);
+                assertEquals(Integer.bitCount(expected), count);
+                for (int i = 0; i < count; i++) {
+                    int dx = WorldPointUtil.unpackWorldX(neighbors[i]) - x;
+                    int dy = WorldPointUtil.unpackWorldY(neighbors[i]) - y;
+                    int direction = -1;
+                    for (OrdinalDirection step : DIRECTIONS) {
+                        if (step.x == dx && step.y == dy) {
+                            direction = step.ordinal();
+                        }
+                    }
+                    assertTrue((expected & (1 << direction)) != 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void jumpLayerMatchesWalkingEachStep() {
+        for (long seed = 0; seed < 3; seed++) {
+            // more than a region across, so that jumps meet the region borders
+            CollisionMap map = TestMaps.random(80, 72, 0.2, seed);
+            Random random = new Random(seed);
+            List<Integer> forced = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                forced.add(TestMaps.tile(random.nextInt(80), random.nextInt(72)));
+            }
+            map.setForcedJumpPoints(forced);
+
+            for (int x = 0; x < 80; x++) {
+                for (int y = 0; y < 72; y++) {
+                    for (OrdinalDirection direction : DIRECTIONS) {
+                        int tile = TestMaps.tile(x, y);
+                        assertEquals("seed " + seed + " " + WorldPointUtil.unpackWorldPoint(tile) + " " + direction,
+                            walk(map, tile, direction.ordinal()), map.getJump(TestMaps.MIN_X + x, TestMaps.MIN_Y + y, 0, direction.ordinal()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void turnsWhereAWallEnds() {
+        CollisionMap map = TestMaps.fromRows(
+            "#####.....",
+            "..........",
+            "..........");
+        int east = OrdinalDirection.EAST.ordinal();
+
+        // walking east under the wall, the tiles north of its end can only be got to through the tile below it
+        assertEquals(1 << east | 1 << OrdinalDirection.NORTH.ordinal() | 1 << OrdinalDirection.NORTH_EAST.ordinal(),
+            map.getCanonicalMoves(TestMaps.MIN_X + 5, TestMaps.MIN_Y + 1, 0, east));
+        assertEquals(1 << east, map.getCanonicalMoves(TestMaps.MIN_X + 7, TestMaps.MIN_Y + 1, 0, east));
+        assertEquals(5 | CollisionMap.JUMP_POINT, map.getJump(TestMaps.MIN_X, TestMaps.MIN_Y + 1, 0, east));
+        // without the wall the row has no jump points, and the jump ends where the map does
+        assertEquals(9, map.getJump(TestMaps.MIN_X, TestMaps.MIN_Y, 0, east));
+    }
+
+    @Test
+    public void jumpsStopAtTheRegionBorder() {
+        CollisionMap map = TestMaps.fromRows(
+            "................................................................................",
+            "................................................................................");
+        int east = OrdinalDirection.EAST.ordinal();
+
+        assertEquals(63, map.getJump(TestMaps.MIN_X, TestMaps.MIN_Y, 0, east));
+        assertEquals(0, map.getJump(TestMaps.MIN_X + 63, TestMaps.MIN_Y, 0, east));
+        // the jump goes on from the first tile of the next region
+        assertEquals(15, map.getJump(TestMaps.MIN_X + 64, TestMaps.MIN_Y, 0, east));
+    }
+
+    @Test
+    public void recomputesOnlyTheRegionsWhereForcedJumpPointsChanged() {
+        CollisionMap map = TestMaps.fromRows(
+            "................................................................................",
+            "................................................................................");
+        int east = OrdinalDirection.EAST.ordinal();
+        map.getJump(TestMaps.MIN_X, TestMaps.MIN_Y, 0, east);
+        map.getJump(TestMaps.MIN_X + 64, TestMaps.MIN_Y, 0, east);
+        byte[] otherLayer = map.getLoadedRegion(TestMaps.MIN_X / 64 + 1, TestMaps.MIN_Y / 64).jumpLayers[0];
+        long loadedSize = map.getLoadedSize();
+
+        map.setForcedJumpPoints(Collections.singletonList(TestMaps.tile(10, 0)));
+        assertEquals(otherLayer, map.getLoadedRegion(TestMaps.MIN_X / 64 + 1, TestMaps.MIN_Y / 64).jumpLayers[0]);
+        assertEquals(loadedSize - otherLayer.length, map.getLoadedSize());
+        assertEquals(10 | CollisionMap.JUMP_POINT, map.getJump(TestMaps.MIN_X, TestMaps.MIN_Y, 0, east));
+        assertTrue(map.isForcedJumpPoint(TestMaps.tile(10, 0)));
+        assertEquals(loadedSize, map.getLoadedSize());
+
+        map.setForcedJumpPoints(Collections.emptyList());
+        assertEquals(63, map.getJump(TestMaps.MIN_X, TestMaps.MIN_Y, 0, east));
+    }
+
+    @Test
+    public void recomputesTheLayersOfARegionAfterItsFlagsChange() {
+        CollisionMap map = TestMaps.fromRows(
+            "..........",
+            "..........");
+        int x = TestMaps.MIN_X;
+        int y = TestMaps.MIN_Y;
+        int east = OrdinalDirection.EAST.ordinal();
+        assertEquals(9, map.getJump(x, y, 0, east));
+
+        // a wall on the east side of the fifth tile
+        map.getRegion(x, y).set(x + 4, y, 0, 1, false);
+        map.invalidateRegion(x / 64, y / 64);
+        assertEquals(0, map.getTraversable(x + 4, y, 0) & (1 << east));
+        assertEquals(4, map.getJump(x, y, 0, east));
+    }
+
+    /**
+     * A zip of compressed regions as bundled with the plugin, with one region where the corner tile can be walked
+     * north from, and optionally east
+     */
+    private static byte[] source(boolean east) throws IOException {
+        int x = TestMaps.MIN_X;
+        int y = TestMaps.MIN_Y;
+        FlagMap region = new FlagMap(x, y, x + 63, y + 63, 2);
+        region.set(x, y, 0, 0, true);
+        region.set(x, y, 0, 1, east);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(region.toBytes());
+        }
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry(x / 64 + "_" + y / 64));
+            out.write(compressed.toByteArray());
+            out.closeEntry();
+        }
+        return zip.toByteArray();
+    }
+
+    private static long checksum(byte[] source) {
+        CRC32 crc = new CRC32();
+        crc.update(source);
+        return crc.getValue();
+    }
+
+    private static void assertFlags(CollisionMap map, boolean east) {
+        assertTrue(map.n(TestMaps.MIN_X, TestMaps.MIN_Y, 0));
+        assertEquals(east, map.e(TestMaps.MIN_X, TestMaps.MIN_Y, 0));
+        assertFalse(map.n(TestMaps.MIN_X + 1, TestMaps.MIN_Y, 0));
+        // the tiles of regions missing from the source are blocked
+        assertTrue(map.isBlocked(TestMaps.MIN_X + 64, TestMaps.MIN_Y, 0));
+    }
+
+    /**
+     * The directions that can be walked in from a tile by the flags of each step: a diagonal step needs both of
+     * its straight parts open from either side, and from a blocked tile any tile that is not blocked can be walked to
+     */
+    private static int traversable(CollisionMap map, int x, int y) {
+        boolean[] open;
+        if (map.isBlocked(x, y, 0)) {
+            boolean west = !map.isBlocked(x - 1, y, 0);
+            boolean east = !map.isBlocked(x + 1, y, 0);
+            boolean south = !map.isBlocked(x, y - 1, 0);
+            boolean north = !map.isBlocked(x, y + 1, 0);
+            open = new boolean[]{
+                west, east, south, north,
+                !map.isBlocked(x - 1, y - 1, 0) && west && south,
+                !map.isBlocked(x + 1, y - 1, 0) && east && south,
+                !map.isBlocked(x - 1, y + 1, 0) && west && north,
+                !map.isBlocked(x + 1, y + 1, 0) && east && north
+            };
+        } else {
+            open = new boolean[]{
+                map.w(x, y, 0), map.e(x, y, 0), map.s(x, y, 0), map.n(x, y, 0),
+                map.s(x, y, 0) && map.w(x, y - 1, 0) && map.w(x, y, 0) && map.s(x - 1, y, 0),
+                map.s(x, y, 0) && map.e(x, y - 1, 0) && map.e(x, y, 0) && map.s(x + 1, y, 0),
+                map.n(x, y, 0) && map.w(x, y + 1, 0) && map.w(x, y, 0) && map.n(x - 1, y, 0),
+                map.n(x, y, 0) && map.e(x, y + 1, 0) && map.e(x, y, 0) && map.n(x + 1, y, 0)
+            };
+        }
+        int mask = 0;
+        for (int d = 0; d < open.length; d++) {
+            if (open[d]) {
+                mask |= 1 << d;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * The jump layer entry of a tile, found by walking one step at a time
+     */
+    private static int walk(CollisionMap map, int tile, int direction) {
+        OrdinalDirection step = DIRECTIONS[direction];
+        int x = WorldPointUtil.unpackWorldX(tile);
+        int y = WorldPointUtil.unpackWorldY(tile);
+        int regionX = x / 64;
+        int regionY = y / 64;
+        int steps = 0;
+        while ((map.getTraversable(x, y, 0) & (1 << direction)) != 0 &&
+            (x + step.x) / 64 == regionX && (y + step.y) / 64 == regionY) {
+            x += step.x;
+            y += step.y;
+            steps++;
+            if (isJumpPoint(map, x, y, direction)) {
+                return steps | CollisionMap.JUMP_POINT;
+            }
+        }
+        return steps;
+    }
+
+    private static boolean isJumpPoint(CollisionMap map, int x, int y, int arrival) {
+        OrdinalDirection step = DIRECTIONS[arrival];
+        int natural = 1 << arrival;
+        int horizontal = step.x < 0 ? OrdinalDirection.WEST.ordinal() : OrdinalDirection.EAST.ordinal();
+        int vertical = step.y < 0 ? OrdinalDirection.SOUTH.ordinal() : OrdinalDirection.NORTH.ordinal();
+        boolean diagonal = step.x != 0 && step.y != 0;
+        if (diagonal) {
+            natural |= 1 << horizontal | 1 << vertical;
+        }
+        if (map.isForcedJumpPoint(WorldPointUtil.packWorldPoint(x, y, 0)) ||
+            (map.getCanonicalMoves(x, y, 0, arrival) & ~natural) != 0) {
+            return true;
+        }
+        return diagonal && (endsAtStop(map, x, y, horizontal) || endsAtStop(map, x, y, vertical));
+    }
+
+    /**
+     * Whether walking straight from a tile reaches a jump point, or the region border with the way still open
+     */
+    private static boolean endsAtStop(CollisionMap map, int x, int y, int direction) {
+        int jump = walk(map, WorldPointUtil.packWorldPoint(x, y, 0), direction);
+        if ((jump & CollisionMap.JUMP_POINT) != 0) {
+            return true;
+        }
+        int steps = jump & CollisionMap.JUMP_DISTANCE;
+        return (map.getTraversable(x + DIRECTIONS[direction].x * steps, y + DIRECTIONS[direction].y * steps, 0) & (1 << direction)) != 0;
+    }
+}
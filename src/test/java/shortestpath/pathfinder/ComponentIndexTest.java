@@ -0,0 +1,94 @@
+package shortestpath.pathfinder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import shortestpath.TestTransports;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+
+public class ComponentIndexTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 72;
+    private static final int SNAP_RADIUS = 64;
+
+    @Test
+    public void joinsTheComponentsATransportLeadsBetween() {
+        // a wall splits the map past the region border
+        String[] rows = new String[8];
+        Arrays.fill(rows, String.join("", Collections.nCopies(70, ".")) + "#" + String.join("", Collections.nCopies(9, ".")));
+        CollisionMap map = TestMaps.fromRows(rows);
+        ComponentIndex index = new ComponentIndex(map);
+        int start = TestMaps.tile(2, 3);
+        int target = TestMaps.tile(75, 3);
+        assertEquals("before the index is built", target, index.nearestReachable(start, target, Collections.emptyList()));
+        index.build();
+
+        assertEquals(TestMaps.tile(69, 3), index.nearestReachable(start, target, Collections.emptyList()));
+        List<Transport> transports = Collections.singletonList(TestTransports.transport(TestMaps.tile(10, 1), TestMaps.tile(78, 7), 5));
+        assertEquals(target, index.nearestReachable(start, target, transports));
+        // the transport only leads one way
+        assertEquals(TestMaps.tile(71, 3), index.nearestReachable(target, TestMaps.tile(66, 3), transports));
+        assertEquals("nothing reachable nearby", WorldPointUtil.UNDEFINED, index.nearestReachable(target, start, transports));
+    }
+
+    @Test
+    public void findsWhatCanBeReachedByWalkingAndTransports() {
+        for (long seed = 0; seed < 3; seed++) {
+            // enough of the tiles blocked to split the map into many components
+            CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.4, seed);
+            Random random = new Random(seed);
+            List<Transport> transports = DistanceFieldTest.randomTransports(map, 10, random);
+            ComponentIndex index = new ComponentIndex(map);
+            index.build();
+            List<Integer> tiles = DistanceFieldTest.openTiles(map, WIDTH, HEIGHT);
+
+            for (int i = 0; i < 20; i++) {
+                int start = tiles.get(random.nextInt(tiles.size()));
+                Map<Integer, Integer> reached = DistanceFieldTest.dijkstra(tiles, map, transports, start, false);
+                int[] targets = new int[10];
+                for (int j = 0; j < targets.length; j++) {
+                    targets[j] = tiles.get(random.nextInt(tiles.size()));
+                }
+
+                int[] nearest = index.nearestReachable(start, targets, transports);
+                for (int j = 0; j < targets.length; j++) {
+                    String query = "seed " + seed + " from " + WorldPointUtil.unpackWorldPoint(start) + " to " +
+                        WorldPointUtil.unpackWorldPoint(targets[j]);
+                    long expected = nearestReached(reached, targets[j]);
+                    if (expected >> 32 > SNAP_RADIUS) {
+                        assertEquals(query, WorldPointUtil.UNDEFINED, nearest[j]);
+                    } else {
+                        assertEquals(query, expected, snapDistance(targets[j], nearest[j]));
+                    }
+                    assertEquals(query, nearest[j], index.nearestReachable(start, targets[j], transports));
+                    if (reached.containsKey(targets[j])) {
+                        assertEquals(query, targets[j], nearest[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The distance to the nearest reached tile, by the ring around the target it is in and then in a straight line
+     */
+    private static long nearestReached(Map<Integer, Integer> reached, int target) {
+        long nearest = Long.MAX_VALUE;
+        for (int tile : reached.keySet()) {
+            nearest = Math.min(nearest, snapDistance(target, tile));
+        }
+        return nearest;
+    }
+
+    private static long snapDistance(int target, int tile) {
+        int dx = WorldPointUtil.unpackWorldX(tile) - WorldPointUtil.unpackWorldX(target);
+        int dy = WorldPointUtil.unpackWorldY(tile) - WorldPointUtil.unpackWorldY(target);
+        return (long) Math.max(Math.abs(dx), Math.abs(dy)) << 32 | (dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,231 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Test;
+import shortestpath.TestTransports;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceFieldTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 40;
+
+    @Test
+    public void findsTheTravelTimesOfAnOpenMap() {
+        CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0, 1);
+        int root = TestMaps.tile(10, 10);
+        DistanceField field = new DistanceField(map, new TransportGraph(map, Collections.emptyList()), root, false, false);
+        field.expandTo(Integer.MAX_VALUE);
+
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                assertEquals(Math.max(Math.abs(x - 10), Math.abs(y - 10)), field.getDistance(TestMaps.tile(x, y)));
+            }
+        }
+    }
+
+    @Test
+    public void matchesDijkstraWithTransportsInBothDirections() {
+        for (long seed = 0; seed < 5; seed++) {
+            CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.3, seed);
+            List<Transport> transports = randomTransports(map, 12, new Random(seed));
+            TransportGraph graph = new TransportGraph(map, transports);
+            int root = openTiles(map).get(0);
+            for (boolean reverse : new boolean[]{false, true}) {
+                DistanceField field = new DistanceField(map, graph, root, reverse, false);
+                field.expandTo(Integer.MAX_VALUE);
+                Map<Integer, Integer> expected = dijkstra(map, transports, root, reverse);
+                for (int tile : openTiles(map)) {
+                    int distance = expected.getOrDefault(tile, DistanceField.UNREACHED);
+                    assertEquals("seed " + seed + " reverse " + reverse, distance, field.getDistance(tile));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void followsATransportThatSavesTime() {
+        CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0, 1);
+        int origin = TestMaps.tile(1, 1);
+        int destination = TestMaps.tile(40, 30);
+        List<Transport> transports = Collections.singletonList(TestTransports.transport(origin, destination, 5));
+        DistanceField field = new DistanceField(map, new TransportGraph(map, transports), destination, true, false);
+
+        assertEquals(5, field.expandUntil(origin, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList(WorldPointUtil.unpackWorldPoint(origin), WorldPointUtil.unpackWorldPoint(destination)),
+            field.getPath(origin));
+        assertEquals(6, field.expandUntil(TestMaps.tile(2, 2), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void leadsBackToTheRootAlongItsTravelTimes() {
+        CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.3, 7);
+        int root = openTiles(map).get(0);
+        DistanceField field = new DistanceField(map, new TransportGraph(map, Collections.emptyList()), root, false, false);
+        field.expandTo(Integer.MAX_VALUE);
+
+        for (int tile : openTiles(map)) {
+            List<WorldPoint> path = field.getPath(tile);
+            if (field.getDistance(tile) == DistanceField.UNREACHED) {
+                assertNull(path);
+                continue;
+            }
+            assertNotNull(path);
+            assertEquals(field.getDistance(tile) + 1, path.size());
+            assertEquals(WorldPointUtil.unpackWorldPoint(root), path.get(0));
+            assertEquals(WorldPointUtil.unpackWorldPoint(tile), path.get(path.size() - 1));
+            for (int i = 1; i < path.size(); i++) {
+                assertEquals(1, path.get(i - 1).distanceTo(path.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void stopsWhenTheTileIsSettled() {
+        CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0, 1);
+        int root = TestMaps.tile(0, 0);
+        DistanceField field = new DistanceField(map, new TransportGraph(map, Collections.emptyList()), root, false, false);
+
+        assertEquals(3, field.expandUntil(TestMaps.tile(3, 3), Integer.MAX_VALUE));
+        assertEquals(DistanceField.UNREACHED, field.getDistance(TestMaps.tile(30, 30)));
+        assertEquals(DistanceField.UNREACHED, field.expandUntil(TestMaps.tile(30, 30), 10));
+        assertEquals(30, field.expandUntil(TestMaps.tile(30, 30), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void repairsToTheTravelTimesOfAFreshFieldAfterTransportsChange() {
+        for (long seed = 0; seed < 8; seed++) {
+            CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.25, seed);
+            Random random = new Random(seed);
+            List<Transport> before = randomTransports(map, 16, random);
+            List<Transport> after = new ArrayList<>(before.subList(0, before.size() / 2));
+            after.addAll(randomTransports(map, 8, random));
+            int root = openTiles(map).get(random.nextInt(openTiles(map).size()));
+
+            for (boolean reverse : new boolean[]{false, true}) {
+                // a field expanded all the way, and one stopped partway with travel times still queued
+                for (int expandedTo : new int[]{Integer.MAX_VALUE, 15}) {
+                    DistanceField field = new DistanceField(map, new TransportGraph(map, before), root, reverse, false);
+                    field.expandTo(expandedTo);
+                    assertTrue(field.update(new TransportGraph(map, after)));
+                    field.expandTo(Integer.MAX_VALUE);
+
+                    DistanceField fresh = new DistanceField(map, new TransportGraph(map, after), root, reverse, false);
+                    fresh.expandTo(Integer.MAX_VALUE);
+                    for (int tile : openTiles(map)) {
+                        assertEquals("seed " + seed + " reverse " + reverse + " expanded to " + expandedTo,
+                            fresh.getDistance(tile), field.getDistance(tile));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheTravelTimesWhenTheTransportsAreTheSame() {
+        CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.25, 3);
+        List<Transport> transports = randomTransports(map, 10, new Random(3));
+        int root = openTiles(map).get(0);
+        DistanceField field = new DistanceField(map, new TransportGraph(map, transports), root, false, false);
+        field.expandTo(Integer.MAX_VALUE);
+        int[] distances = openTiles(map).stream().mapToInt(field::getDistance).toArray();
+
+        assertTrue(field.update(new TransportGraph(map, new ArrayList<>(transports))));
+        assertArrayEquals(distances, openTiles(map).stream().mapToInt(field::getDistance).toArray());
+    }
+
+    /**
+     * The open tiles of a test map, south-west first
+     */
+    static List<Integer> openTiles(CollisionMap map) {
+        return openTiles(map, WIDTH, HEIGHT);
+    }
+
+    static List<Integer> openTiles(CollisionMap map, int width, int height) {
+        List<Integer> tiles = new ArrayList<>();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (!map.isBlocked(TestMaps.MIN_X + x, TestMaps.MIN_Y + y, 0)) {
+                    tiles.add(TestMaps.tile(x, y));
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Transports between open tiles chosen at random
+     */
+    static List<Transport> randomTransports(CollisionMap map, int count, Random random) {
+        List<Integer> tiles = openTiles(map);
+        List<Transport> transports = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int origin = tiles.get(random.nextInt(tiles.size()));
+            int destination = tiles.get(random.nextInt(tiles.size()));
+            if (origin != destination) {
+                transports.add(TestTransports.transport(origin, destination, random.nextInt(20)));
+            }
+        }
+        return transports;
+    }
+
+    /**
+     * The travel times from a root, or to it if reverse, found by a plain Dijkstra over every edge of the map
+     */
+    static Map<Integer, Integer> dijkstra(CollisionMap map, List<Transport> transports, int root, boolean reverse) {
+        return dijkstra(openTiles(map), map, transports, root, reverse);
+    }
+
+    /**
+     * @param tiles  the open tiles of the map
+     */
+    static Map<Integer, Integer> dijkstra(List<Integer> tiles, CollisionMap map, List<Transport> transports, int root, boolean reverse) {
+        Map<Integer, List<int[]>> edges = new HashMap<>();
+        int[] neighbors = new int[8];
+        for (int tile : tiles) {
+            int count = map.getNeighbors(tile, neighbors);
+            for (int i = 0; i < count; i++) {
+                addEdge(edges, tile, neighbors[i], 1, reverse);
+            }
+        }
+        for (Transport transport : transports) {
+            addEdge(edges, WorldPointUtil.packWorldPoint(transport.getOrigin()),
+                WorldPointUtil.packWorldPoint(transport.getDestination()), Pathfinder.getCost(transport), reverse);
+        }
+
+        Map<Integer, Integer> distances = new HashMap<>();
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> Integer.compare(a[1], b[1]));
+        queue.add(new int[]{root, 0});
+        while (!queue.isEmpty()) {
+            int[] next = queue.poll();
+            if (distances.containsKey(next[0])) {
+                continue;
+            }
+            distances.put(next[0], next[1]);
+            for (int[] edge : edges.getOrDefault(next[0], Collections.emptyList())) {
+                if (!distances.containsKey(edge[0])) {
+                    queue.add(new int[]{edge[0], next[1] + edge[1]});
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static void addEdge(Map<Integer, List<int[]>> edges, int from, int to, int cost, boolean reverse) {
+        edges.computeIfAbsent(reverse ? to : from, k -> new ArrayList<>()).add(new int[]{reverse ? from : to, cost});
+    }
+}
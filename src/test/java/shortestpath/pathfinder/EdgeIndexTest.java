@@ -0,0 +1,95 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EdgeIndexTest {
+    @Test
+    public void groupsTheEdgesOfEachKeyInTheOrderTheyWereAdded() {
+        Random random = new Random(1);
+        EdgeIndex.Builder builder = new EdgeIndex.Builder();
+        Map<Integer, List<int[]>> expected = new HashMap<>();
+        // more edges than the builder starts with room for, added with the keys mixed together
+        for (int i = 0; i < 1000; i++) {
+            int key = TestMaps.tile(random.nextInt(40), random.nextInt(40));
+            int[] edge = {TestMaps.tile(random.nextInt(40), random.nextInt(40)), random.nextInt(50),
+                random.nextBoolean() ? WorldPointUtil.UNDEFINED : TestMaps.tile(random.nextInt(40), random.nextInt(40))};
+            builder.add(key, edge[0], edge[1], edge[2]);
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(edge);
+        }
+        EdgeIndex index = builder.build(new VisitedTiles());
+
+        for (Map.Entry<Integer, List<int[]>> row : expected.entrySet()) {
+            int found = index.find(row.getKey());
+            assertTrue(found != EdgeIndex.NONE);
+            assertEquals(row.getValue().size(), index.end(found) - index.start(found));
+            for (int i = 0; i < row.getValue().size(); i++) {
+                int[] edge = row.getValue().get(i);
+                assertEquals(edge[0], index.tile(index.start(found) + i));
+                assertEquals(edge[1], index.cost(index.start(found) + i));
+                assertEquals(edge[2], index.via(index.start(found) + i));
+            }
+        }
+        for (int x = 0; x < 40; x++) {
+            for (int y = 0; y < 40; y++) {
+                if (!expected.containsKey(TestMaps.tile(x, y))) {
+                    assertEquals(EdgeIndex.NONE, index.find(TestMaps.tile(x, y)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsKeysThatAreNotTiles() {
+        EdgeIndex.Builder builder = new EdgeIndex.Builder();
+        builder.add(2, 20, 1, WorldPointUtil.UNDEFINED);
+        builder.add(0, 10, 2, WorldPointUtil.UNDEFINED);
+        builder.add(2, 21, 3, 5);
+        EdgeIndex index = builder.build(null);
+
+        assertEquals(1, index.end(index.find(0)) - index.start(index.find(0)));
+        assertEquals(10, index.tile(index.start(index.find(0))));
+        assertEquals(EdgeIndex.NONE, index.find(1));
+        assertEquals(EdgeIndex.NONE, index.find(3));
+
+        int row = index.find(2);
+        assertEquals(2, index.end(row) - index.start(row));
+        assertEquals(20, index.tile(index.start(row)));
+        assertEquals(21, index.tile(index.start(row) + 1));
+        assertEquals(3, index.cost(index.start(row) + 1));
+        assertEquals(5, index.via(index.start(row) + 1));
+    }
+
+    @Test
+    public void sharesTheKeyTilesBetweenIndexes() {
+        VisitedTiles keyTiles = new VisitedTiles();
+        EdgeIndex.Builder first = new EdgeIndex.Builder();
+        first.add(TestMaps.tile(1, 1), TestMaps.tile(2, 2), 1, WorldPointUtil.UNDEFINED);
+        EdgeIndex.Builder second = new EdgeIndex.Builder();
+        second.add(TestMaps.tile(3, 3), TestMaps.tile(4, 4), 1, WorldPointUtil.UNDEFINED);
+        EdgeIndex firstIndex = first.build(keyTiles);
+        EdgeIndex secondIndex = second.build(keyTiles);
+
+        assertTrue(keyTiles.get(TestMaps.tile(1, 1)));
+        assertTrue(keyTiles.get(TestMaps.tile(3, 3)));
+        assertFalse(keyTiles.get(TestMaps.tile(2, 2)));
+        // a tile in the shared bitmap is still looked up in each index
+        assertEquals(EdgeIndex.NONE, firstIndex.find(TestMaps.tile(3, 3)));
+        assertEquals(EdgeIndex.NONE, secondIndex.find(TestMaps.tile(1, 1)));
+    }
+
+    @Test
+    public void buildsAnEmptyIndex() {
+        EdgeIndex index = new EdgeIndex.Builder().build(new VisitedTiles());
+        assertEquals(EdgeIndex.NONE, index.find(TestMaps.tile(0, 0)));
+    }
+}
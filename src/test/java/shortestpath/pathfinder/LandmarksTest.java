@@ -0,0 +1,95 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import shortestpath.TestTransports;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LandmarksTest {
+    // two regions across and up, so that the bounds are taken between different regions
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 128;
+
+    @Test
+    public void neverBoundsATravelTimeAboveTheQuickest() {
+        long positive = 0;
+        for (long seed = 0; seed < 2; seed++) {
+            CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.1, seed);
+            Random random = new Random(seed);
+            List<Integer> tiles = DistanceFieldTest.openTiles(map, WIDTH, HEIGHT);
+            List<Transport> transports = randomTransports(tiles, 16, random);
+            Landmarks landmarks = new Landmarks(map, Runnable::run);
+            assertNull("before the tables are built", landmarks.getBounds(tiles.get(0), tiles.get(1), transports));
+            landmarks.build(transports);
+
+            for (int i = 0; i < 4; i++) {
+                int start = tiles.get(random.nextInt(tiles.size()));
+                int target = tiles.get(random.nextInt(tiles.size()));
+                String query = "seed " + seed + " from " + WorldPointUtil.unpackWorldPoint(start) + " to " +
+                    WorldPointUtil.unpackWorldPoint(target);
+
+                Landmarks.Bounds towards = landmarks.getBounds(start, target, transports);
+                assertNotNull(query, towards);
+                for (Map.Entry<Integer, Integer> to : DistanceFieldTest.dijkstra(tiles, map, transports, target, true).entrySet()) {
+                    int bound = towards.lowerBound(to.getKey());
+                    assertTrue(query + " at " + WorldPointUtil.unpackWorldPoint(to.getKey()) + ": " + bound + " > " + to.getValue(),
+                        bound <= to.getValue());
+                    positive += bound;
+                }
+
+                Landmarks.Bounds from = landmarks.getBoundsFrom(start, transports);
+                assertNotNull(query, from);
+                for (Map.Entry<Integer, Integer> to : DistanceFieldTest.dijkstra(tiles, map, transports, start, false).entrySet()) {
+                    int bound = from.lowerBound(to.getKey());
+                    assertTrue(query + " at " + WorldPointUtil.unpackWorldPoint(to.getKey()) + ": " + bound + " > " + to.getValue(),
+                        bound <= to.getValue());
+                    positive += bound;
+                }
+            }
+        }
+        assertTrue("the bounds are not all zero", positive > 0);
+    }
+
+    @Test
+    public void rebuildsForATransportThatIsNotInTheTables() {
+        CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.1, 3);
+        List<Integer> tiles = DistanceFieldTest.openTiles(map, WIDTH, HEIGHT);
+        List<Transport> transports = randomTransports(tiles, 8, new Random(3));
+        Landmarks landmarks = new Landmarks(map, Runnable::run);
+        landmarks.build(transports);
+        int start = tiles.get(0);
+        int target = tiles.get(tiles.size() - 1);
+        assertNotNull(landmarks.getBounds(start, target, transports));
+
+        List<Transport> more = new ArrayList<>(transports);
+        more.add(TestTransports.transport(tiles.get(1), target, 0));
+        assertNull(landmarks.getBounds(start, target, more));
+        // the rebuild ran straight away on the executor
+        assertNotNull(landmarks.getBounds(start, target, more));
+        assertTrue(landmarks.getBounds(start, target, more).lowerBound(tiles.get(1)) <= Pathfinder.getCost(more.get(more.size() - 1)));
+        // a transport from the start is only ever the first step, where the bound is not used
+        assertNotNull(landmarks.getBounds(start, target,
+            Collections.singletonList(TestTransports.transport(start, tiles.get(2), 0))));
+    }
+
+    private static List<Transport> randomTransports(List<Integer> tiles, int count, Random random) {
+        List<Transport> transports = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int origin = tiles.get(random.nextInt(tiles.size()));
+            int destination = tiles.get(random.nextInt(tiles.size()));
+            if (origin != destination) {
+                transports.add(TestTransports.transport(origin, destination, random.nextInt(20)));
+            }
+        }
+        return transports;
+    }
+}
@@ -0,0 +1,71 @@
+package shortestpath.pathfinder;
+
+import org.junit.Test;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NodeArenaTest {
+    @Test
+    public void writesThePathStartFirst() {
+        NodeArena arena = new NodeArena();
+        int start = arena.add(10, NodeArena.NONE, 0, 5, false);
+        int middle = arena.add(11, start, 1, 5, true);
+        int end = arena.add(12, middle, 2, 5, false);
+
+        assertEquals(3, arena.getPath(end));
+        int[] path = arena.getPathBuffer();
+        assertEquals(10, path[0]);
+        assertEquals(11, path[1]);
+        assertEquals(12, path[2]);
+        assertTrue(arena.isTransport(middle));
+        assertFalse(arena.isTransport(end));
+    }
+
+    @Test
+    public void growsPastItsInitialCapacityAndPathBuffer() {
+        NodeArena arena = new NodeArena();
+        int node = NodeArena.NONE;
+        for (int i = 0; i < 10000; i++) {
+            node = arena.add(i, node, i, i, false);
+        }
+
+        assertEquals(10000, arena.size());
+        assertEquals(10000, arena.getPath(node));
+        int[] path = arena.getPathBuffer();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, path[i]);
+        }
+    }
+
+    @Test
+    public void updateKeepsTheHeuristic() {
+        NodeArena arena = new NodeArena();
+        int start = arena.add(1, NodeArena.NONE, 0, 0, false);
+        int other = arena.add(2, NodeArena.NONE, 0, 0, false);
+        int node = arena.add(3, start, 20, 50, false);
+
+        arena.update(node, other, 5, false);
+        assertEquals(5, arena.getCost(node));
+        assertEquals(35, arena.getPriority(node));
+        assertEquals(2, arena.getPath(node));
+        assertEquals(2, arena.getPathBuffer()[0]);
+    }
+
+    @Test
+    public void clearEmptiesTheArenaForTheNextSearch() {
+        NodeArena arena = new NodeArena();
+        int tile = WorldPointUtil.packWorldPoint(3200, 3200, 0);
+        int node = arena.add(tile, NodeArena.NONE, 0, 0, false);
+        arena.nodes.put(tile, node);
+        arena.boundary.add(node);
+
+        arena.clear();
+        assertEquals(0, arena.size());
+        assertTrue(arena.boundary.isEmpty());
+        assertEquals(NodeArena.NONE, arena.nodes.get(tile));
+        assertEquals(0, arena.add(tile, NodeArena.NONE, 0, 0, false));
+    }
+}
@@ -0,0 +1,87 @@
+package shortestpath.pathfinder;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NodeHeapTest {
+    @Test
+    public void pollsNodesInOrderOfPriority() {
+        NodeArena arena = new NodeArena();
+        NodeHeap heap = arena.boundary;
+        Random random = new Random(1);
+        int[] priorities = new int[5000];
+        for (int i = 0; i < priorities.length; i++) {
+            priorities[i] = random.nextInt(1000);
+            heap.add(arena.add(i, NodeArena.NONE, 0, priorities[i], false));
+        }
+
+        Arrays.sort(priorities);
+        for (int priority : priorities) {
+            assertEquals(priority, arena.getPriority(heap.poll()));
+        }
+        assertTrue(heap.isEmpty());
+        assertEquals(NodeArena.NONE, heap.poll());
+    }
+
+    @Test
+    public void breaksTiesInFavourOfTheNodeClosestToTheTarget() {
+        NodeArena arena = new NodeArena();
+        NodeHeap heap = arena.boundary;
+        int far = arena.add(1, NodeArena.NONE, 10, 50, false);
+        int near = arena.add(2, NodeArena.NONE, 40, 50, false);
+        heap.add(far);
+        heap.add(near);
+
+        assertEquals(near, heap.poll());
+        assertEquals(far, heap.poll());
+    }
+
+    @Test
+    public void decreaseKeyMovesANodeToItsNewPlace() {
+        NodeArena arena = new NodeArena();
+        NodeHeap heap = arena.boundary;
+        int[] nodes = new int[100];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = arena.add(i, NodeArena.NONE, 100 + i, 200 + i, false);
+            heap.add(nodes[i]);
+        }
+
+        int last = nodes[nodes.length - 1];
+        arena.update(last, nodes[0], 10, false);
+        heap.decreaseKey(last);
+        assertEquals(nodes.length, heap.size());
+        assertEquals(last, heap.peek());
+        assertEquals(10, arena.getCost(last));
+        assertEquals(10 + 100, arena.getPriority(last));
+
+        int previous = Integer.MIN_VALUE;
+        while (!heap.isEmpty()) {
+            int priority = arena.getPriority(heap.poll());
+            assertTrue(priority >= previous);
+            previous = priority;
+        }
+    }
+
+    @Test
+    public void tracksWhichNodesAreInTheHeap() {
+        NodeArena arena = new NodeArena();
+        NodeHeap heap = arena.boundary;
+        int a = arena.add(1, NodeArena.NONE, 0, 1, false);
+        int b = arena.add(2, NodeArena.NONE, 0, 2, false);
+        heap.add(a);
+        heap.add(b);
+
+        assertEquals(a, heap.poll());
+        assertFalse(heap.contains(a));
+        assertTrue(heap.contains(b));
+
+        heap.clear();
+        assertFalse(heap.contains(b));
+        assertTrue(heap.isEmpty());
+    }
+}
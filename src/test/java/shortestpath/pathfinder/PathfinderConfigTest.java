@@ -0,0 +1,285 @@
+package shortestpath.pathfinder;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.Quest;
+import net.runelite.api.QuestState;
+import net.runelite.api.Skill;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.client.callback.ClientThread;
+import org.junit.After;
+import org.junit.Test;
+import shortestpath.ShortestPathConfig;
+import shortestpath.ShortestPathPlugin;
+import shortestpath.Transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathfinderConfigTest {
+    private static final Skill[] SKILLS = {Skill.AGILITY, Skill.RANGED, Skill.STRENGTH, Skill.PRAYER, Skill.WOODCUTTING};
+
+    private final List<PathfinderConfig> configs = new ArrayList<>();
+
+    @After
+    public void shutDown() {
+        configs.forEach(PathfinderConfig::shutDown);
+    }
+
+    @Test
+    public void usesTheTransportsTheSettingsLevelsQuestsAndItemsAllow() {
+        // every bundled transport, whatever the settings they are filtered with
+        Map<WorldPoint, List<Transport>> transports = Transport.fromResources(new ShortestPathConfig() {
+            @Override
+            public boolean useGrappleShortcuts() {
+                return true;
+            }
+
+            @Override
+            public boolean useFairyRings() {
+                return true;
+            }
+
+            @Override
+            public boolean useTeleports() {
+                return true;
+            }
+        });
+        CollisionMap map = TestMaps.random(8, 8, 0, 1);
+        int used = 0;
+        int unused = 0;
+
+        for (long seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            Settings settings = new Settings(random);
+            int[] levels = new int[Skill.values().length];
+            for (Skill skill : SKILLS) {
+                levels[skill.ordinal()] = 1 + random.nextInt(99);
+            }
+            Map<Integer, Integer> questStates = new HashMap<>();
+            for (Quest quest : Quest.values()) {
+                // the states quest status scripts answer with: 1 for not started, 2 for finished, anything else in progress
+                questStates.put(quest.getId(), random.nextInt(3));
+            }
+            boolean hasAxe = random.nextBoolean();
+            Client client = client(levels, questStates);
+            PathfinderConfig config = config(map, transports, client, settings, hasAxe);
+
+            for (List<Transport> origin : transports.values()) {
+                for (Transport transport : origin) {
+                    boolean usable = isUsable(transport, settings, levels, client, hasAxe);
+                    assertEquals("seed " + seed + " " + transport.getOrigin() + " to " + transport.getDestination(),
+                        usable, config.useTransport(transport));
+                    if (usable) {
+                        used++;
+                    } else {
+                        unused++;
+                    }
+                }
+            }
+        }
+        assertTrue(used > 0 && unused > 0);
+    }
+
+    @Test
+    public void compilesTheUsableTransportsWhenTheyCanChange() {
+        Map<WorldPoint, List<Transport>> transports = Transport.fromResources(new ShortestPathConfig() {
+        });
+        CollisionMap map = TestMaps.random(8, 8, 0, 1);
+        int[] levels = new int[Skill.values().length];
+        Arrays.fill(levels, 1);
+        Map<Integer, Integer> questStates = new HashMap<>();
+        Random random = new Random(1);
+        for (Quest quest : Quest.values()) {
+            questStates.put(quest.getId(), random.nextInt(3));
+        }
+        PathfinderConfig config = config(map, transports, client(levels, questStates), new Settings(random), true);
+
+        List<Transport> usable = config.getUsableTransports();
+        List<Transport> copy = new ArrayList<>(usable);
+        assertEquals(usable(config, transports), usable);
+        TransportGraph graph = config.getTransportGraph(usable);
+        // a refresh that changes nothing keeps the list, and with it the edges built for it
+        config.refresh();
+        assertSame(usable, config.getUsableTransports());
+        assertSame(graph, config.getTransportGraph(config.getUsableTransports()));
+
+        Arrays.fill(levels, 99);
+        config.refresh();
+        assertNotSame(usable, config.getUsableTransports());
+        assertEquals(usable(config, transports), config.getUsableTransports());
+        assertTrue(config.getUsableTransports().size() > usable.size());
+        // a search that took the list before keeps it as it was
+        assertEquals(copy, usable);
+    }
+
+    /**
+     * The transports a config would use, in the order they are kept
+     */
+    private static List<Transport> usable(PathfinderConfig config, Map<WorldPoint, List<Transport>> transports) {
+        List<Transport> usable = new ArrayList<>();
+        for (List<Transport> origin : transports.values()) {
+            for (Transport transport : origin) {
+                if (config.useTransport(transport)) {
+                    usable.add(transport);
+                }
+            }
+        }
+        return usable;
+    }
+
+    /**
+     * Whether a transport can be used, by the checks made for each transport as it was searched over
+     */
+    private static boolean isUsable(Transport transport, Settings settings, int[] levels, Client client, boolean hasAxe) {
+        boolean isCanoe = transport.isBoat() && transport.getRequiredLevel(Skill.WOODCUTTING) > 1;
+        if (transport.isAgilityShortcut()) {
+            if (!settings.agilityShortcuts || levels[Skill.AGILITY.ordinal()] < transport.getRequiredLevel(Skill.AGILITY)) {
+                return false;
+            }
+            if (transport.isGrappleShortcut() && (!settings.grappleShortcuts ||
+                levels[Skill.RANGED.ordinal()] < transport.getRequiredLevel(Skill.RANGED) ||
+                levels[Skill.STRENGTH.ordinal()] < transport.getRequiredLevel(Skill.STRENGTH))) {
+                return false;
+            }
+        }
+        if (transport.isBoat() && !settings.boats) {
+            return false;
+        }
+        if (isCanoe && (!settings.canoes || levels[Skill.WOODCUTTING.ordinal()] < transport.getRequiredLevel(Skill.WOODCUTTING) ||
+            settings.checkForAxe && !hasAxe)) {
+            return false;
+        }
+        if (transport.isFairyRing() && (!settings.fairyRings ||
+            QuestState.NOT_STARTED.equals(Quest.FAIRYTALE_II__CURE_A_QUEEN.getState(client)))) {
+            return false;
+        }
+        if (transport.isTeleport() && !settings.teleports) {
+            return false;
+        }
+        if (levels[Skill.PRAYER.ordinal()] < transport.getRequiredLevel(Skill.PRAYER)) {
+            return false;
+        }
+        return !transport.isQuestLocked() || QuestState.FINISHED.equals(transport.getQuest().getState(client));
+    }
+
+    private PathfinderConfig config(CollisionMap map, Map<WorldPoint, List<Transport>> transports, Client client,
+                                    ShortestPathConfig settings, boolean hasAxe) {
+        ClientThread clientThread = new ClientThread() {
+            @Override
+            public void invokeLater(Runnable runnable) {
+                runnable.run();
+            }
+        };
+        ShortestPathPlugin plugin = new ShortestPathPlugin() {
+            @Override
+            public ClientThread getClientThread() {
+                return clientThread;
+            }
+
+            @Override
+            public boolean playerHasAxe() {
+                return hasAxe;
+            }
+
+            @Override
+            public boolean playerHasArdyCloak() {
+                return false;
+            }
+        };
+        PathfinderConfig config = new PathfinderConfig(map, transports, client, settings, plugin);
+        configs.add(config);
+        return config;
+    }
+
+    /**
+     * A logged in client with the given boosted levels, whose quest status script answers with the given states
+     */
+    private static Client client(int[] levels, Map<Integer, Integer> questStates) {
+        int[] intStack = new int[1];
+        return (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getGameState":
+                    return GameState.LOGGED_IN;
+                case "getBoostedSkillLevel":
+                    return levels[((Skill) args[0]).ordinal()];
+                case "runScript":
+                    Object[] arguments = (Object[]) args[0];
+                    intStack[0] = questStates.getOrDefault((Integer) arguments[1], 0);
+                    return null;
+                case "getIntStack":
+                    return intStack;
+            }
+            Class<?> type = method.getReturnType();
+            return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+        });
+    }
+
+    /**
+     * Settings with each kind of transport turned on or off at random
+     */
+    private static class Settings implements ShortestPathConfig {
+        private final boolean agilityShortcuts;
+        private final boolean grappleShortcuts;
+        private final boolean boats;
+        private final boolean canoes;
+        private final boolean checkForAxe;
+        private final boolean fairyRings;
+        private final boolean teleports;
+
+        Settings(Random random) {
+            agilityShortcuts = random.nextBoolean();
+            grappleShortcuts = random.nextBoolean();
+            boats = random.nextBoolean();
+            canoes = random.nextBoolean();
+            checkForAxe = random.nextBoolean();
+            fairyRings = random.nextBoolean();
+            teleports = random.nextBoolean();
+        }
+
+        @Override
+        public boolean useAgilityShortcuts() {
+            return agilityShortcuts;
+        }
+
+        @Override
+        public boolean useGrappleShortcuts() {
+            return grappleShortcuts;
+        }
+
+        @Override
+        public boolean useBoats() {
+            return boats;
+        }
+
+        @Override
+        public boolean useCanoes() {
+            return canoes;
+        }
+
+        @Override
+        public boolean checkForAxeBeforeUsingCanoes() {
+            return checkForAxe;
+        }
+
+        @Override
+        public boolean useFairyRings() {
+            return fairyRings;
+        }
+
+        @Override
+        public boolean useTeleports() {
+            return teleports;
+        }
+    }
+}
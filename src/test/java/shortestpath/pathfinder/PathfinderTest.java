@@ -0,0 +1,456 @@
+package shortestpath.pathfinder;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.client.callback.ClientThread;
+import org.junit.After;
+import org.junit.Test;
+import shortestpath.ShortestPathConfig;
+import shortestpath.ShortestPathPlugin;
+import shortestpath.TestTransports;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathfinderTest {
+    private final List<PathfinderConfig> configs = new ArrayList<>();
+
+    @After
+    public void shutDown() {
+        configs.forEach(PathfinderConfig::shutDown);
+    }
+
+    @Test
+    public void searchingFromBothEndsFindsPathsAsQuickAsFromTheStart() throws Exception {
+        for (long seed = 0; seed < 4; seed++) {
+            CollisionMap map = TestMaps.random(48, 40, 0.25, seed);
+            Random random = new Random(seed);
+            List<Transport> transports = DistanceFieldTest.randomTransports(map, 12, random);
+            // each search gets its own config, so that neither can reuse a path or travel times the other found
+            PathfinderConfig forward = config(map, transports, false);
+            PathfinderConfig bothWays = config(map, transports, true);
+
+            List<Integer> tiles = DistanceFieldTest.openTiles(map);
+            for (int i = 0; i < 25; i++) {
+                int start = tiles.get(random.nextInt(tiles.size()));
+                int target = tiles.get(random.nextInt(tiles.size()));
+                Integer expected = DistanceFieldTest.dijkstra(map, transports, start, false).get(target);
+                if (expected == null) {
+                    continue;
+                }
+
+                String route = "seed " + seed + " from " + WorldPointUtil.unpackWorldPoint(start) + " to " +
+                    WorldPointUtil.unpackWorldPoint(target);
+                assertEquals(route, (int) expected, cost(transports, search(forward, start, target), target));
+                assertEquals(route, (int) expected, cost(transports, search(bothWays, start, target), target));
+            }
+        }
+    }
+
+    @Test
+    public void joinsPathsLongerThanThePathBuffer() throws Exception {
+        // an open area to the south, from which a corridor winds back and forth to the north. The search from the
+        // start has the larger boundary, so the search back from the target follows most of the corridor.
+        String[] rows = new String[40];
+        for (int row = 0; row < rows.length; row++) {
+            StringBuilder tiles = new StringBuilder();
+            for (int column = 0; column < 48; column++) {
+                boolean gap = row % 4 == 1 ? column == 47 : column == 0;
+                tiles.append(row >= 30 || row % 2 == 0 || gap ? '.' : '#');
+            }
+            rows[row] = tiles.toString();
+        }
+        CollisionMap map = TestMaps.fromRows(rows);
+        List<Transport> transports = new ArrayList<>();
+        int start = TestMaps.tile(0, 0);
+        int target = TestMaps.tile(0, 39);
+        int expected = DistanceFieldTest.dijkstra(map, transports, start, false).get(target);
+
+        assertEquals(expected, cost(transports, search(config(map, transports, false), start, target), target));
+        assertEquals(expected, cost(transports, search(config(map, transports, true), start, target), target));
+    }
+
+    @Test
+    public void findsPathsAsQuickAsWithoutACorridor() throws Exception {
+        // several regions, split by walls with a gap in each, so that the regions the quickest path runs
+        // through are not always the ones the abstract graph takes
+        int width = 4 * 64;
+        int height = 3 * 64;
+        for (long seed = 0; seed < 3; seed++) {
+            Random random = new Random(seed);
+            boolean[][] blocked = new boolean[height][width];
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    blocked[row][column] = random.nextDouble() < 0.2;
+                }
+            }
+            for (int wall = 40; wall < width; wall += 56) {
+                int gap = random.nextInt(height - 4);
+                for (int row = 0; row < height; row++) {
+                    blocked[row][wall] = row < gap || row > gap + 3;
+                }
+            }
+            String[] rows = new String[height];
+            for (int row = 0; row < height; row++) {
+                StringBuilder tiles = new StringBuilder();
+                for (int column = 0; column < width; column++) {
+                    tiles.append(blocked[row][column] ? '#' : '.');
+                }
+                rows[row] = tiles.toString();
+            }
+            CollisionMap map = TestMaps.fromRows(rows);
+            List<Integer> tiles = DistanceFieldTest.openTiles(map, width, height);
+            List<Transport> transports = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                transports.add(TestTransports.transport(tiles.get(random.nextInt(tiles.size())),
+                    tiles.get(random.nextInt(tiles.size())), random.nextInt(40)));
+            }
+            PathfinderConfig config = config(map, transports, false);
+            while (!config.getRegionGraph().isReady()) {
+                Thread.sleep(10);
+            }
+
+            int corridors = 0;
+            for (int i = 0; i < 8; i++) {
+                // far enough apart to be searched for in a corridor
+                int start;
+                int target;
+                do {
+                    start = tiles.get(random.nextInt(tiles.size()));
+                    target = tiles.get(random.nextInt(tiles.size()));
+                } while (WorldPointUtil.distanceBetween(start, target) <= 2 * 64);
+                Integer expected = DistanceFieldTest.dijkstra(tiles, map, transports, start, false).get(target);
+                if (expected == null) {
+                    continue;
+                }
+                if (config.getRegionGraph().findCorridor(start, target, transports) != null) {
+                    corridors++;
+                }
+
+                String route = "seed " + seed + " from " + WorldPointUtil.unpackWorldPoint(start) + " to " +
+                    WorldPointUtil.unpackWorldPoint(target);
+                assertEquals(route, (int) expected, cost(transports, search(config, start, target), target));
+            }
+            assertTrue("seed " + seed, corridors > 0);
+        }
+    }
+
+    @Test
+    public void jumpingFindsPathsAsQuickWhileExpandingFewerNodes() throws Exception {
+        int walkingExpanded = 0;
+        int jumpingExpanded = 0;
+        for (long seed = 0; seed < 4; seed++) {
+            // wider than a region, so that the jumps cross region borders
+            CollisionMap map = TestMaps.random(96, 80, 0.1, seed);
+            Random random = new Random(seed);
+            List<Transport> transports = DistanceFieldTest.randomTransports(map, 8, random);
+            PathfinderConfig walking = config(map, transports, false);
+            PathfinderConfig jumping = config(map, transports, new ShortestPathConfig() {
+                @Override
+                public boolean jumpPointSearch() {
+                    return true;
+                }
+            });
+
+            List<Integer> tiles = DistanceFieldTest.openTiles(map, 96, 80);
+            for (int i = 0; i < 20; i++) {
+                int start = tiles.get(random.nextInt(tiles.size()));
+                int target = tiles.get(random.nextInt(tiles.size()));
+                Integer expected = DistanceFieldTest.dijkstra(tiles, map, transports, start, false).get(target);
+                if (expected == null) {
+                    continue;
+                }
+
+                String route = "seed " + seed + " from " + WorldPointUtil.unpackWorldPoint(start) + " to " +
+                    WorldPointUtil.unpackWorldPoint(target);
+                Pathfinder walked = new Pathfinder(walking, WorldPointUtil.unpackWorldPoint(start), WorldPointUtil.unpackWorldPoint(target));
+                assertEquals(route, (int) expected, cost(transports, walked.getResult().get(10, TimeUnit.SECONDS), target));
+                Pathfinder jumped = new Pathfinder(jumping, WorldPointUtil.unpackWorldPoint(start), WorldPointUtil.unpackWorldPoint(target));
+                List<WorldPoint> path = jumped.getResult().get(10, TimeUnit.SECONDS);
+                assertEquals(route, (int) expected, cost(transports, path, target));
+                assertTrue(route, isWalkable(map, transports, path));
+                walkingExpanded += walked.getExpandedCount();
+                jumpingExpanded += jumped.getExpandedCount();
+            }
+        }
+        assertTrue(jumpingExpanded + " expanded jumping, " + walkingExpanded + " walking", jumpingExpanded < walkingExpanded);
+    }
+
+    @Test
+    public void findsTheNearestOfSeveralTargets() throws Exception {
+        for (long seed = 0; seed < 4; seed++) {
+            CollisionMap map = TestMaps.random(48, 40, 0.25, seed);
+            Random random = new Random(seed);
+            List<Transport> transports = DistanceFieldTest.randomTransports(map, 12, random);
+            PathfinderConfig config = config(map, transports, false);
+            List<Integer> tiles = DistanceFieldTest.openTiles(map);
+
+            for (int i = 0; i < 10; i++) {
+                int start = tiles.get(random.nextInt(tiles.size()));
+                Map<Integer, Integer> distances = DistanceFieldTest.dijkstra(map, transports, start, false);
+                List<WorldPoint> targets = new ArrayList<>();
+                int expected = Integer.MAX_VALUE;
+                for (int j = 0; j < 4; j++) {
+                    int target = tiles.get(random.nextInt(tiles.size()));
+                    targets.add(WorldPointUtil.unpackWorldPoint(target));
+                    expected = Math.min(expected, distances.getOrDefault(target, Integer.MAX_VALUE));
+                }
+                if (expected == Integer.MAX_VALUE) {
+                    continue;
+                }
+
+                Pathfinder pathfinder = new Pathfinder(config, WorldPointUtil.unpackWorldPoint(start), targets);
+                List<WorldPoint> path = pathfinder.getResult().get(10, TimeUnit.SECONDS);
+                int target = WorldPointUtil.packWorldPoint(pathfinder.getTarget());
+                String route = "seed " + seed + " from " + WorldPointUtil.unpackWorldPoint(start) + " to " + targets;
+                assertEquals(route, expected, (int) distances.get(target));
+                assertEquals(route, expected, cost(transports, path, target));
+            }
+        }
+    }
+
+    @Test
+    public void cancelledSearchesCompleteWithoutAPath() throws Exception {
+        CollisionMap map = TestMaps.random(96, 80, 0.1, 1);
+        List<Transport> transports = DistanceFieldTest.randomTransports(map, 12, new Random(1));
+        PathfinderConfig config = config(map, transports, false);
+        List<Integer> tiles = DistanceFieldTest.openTiles(map, 96, 80);
+        int start = tiles.get(0);
+        int target = tiles.get(tiles.size() - 1);
+
+        // the search queued behind another is cancelled before it can finish
+        Pathfinder running = new Pathfinder(config, WorldPointUtil.unpackWorldPoint(target), WorldPointUtil.unpackWorldPoint(start));
+        Pathfinder queued = new Pathfinder(config, WorldPointUtil.unpackWorldPoint(start), WorldPointUtil.unpackWorldPoint(target));
+        queued.cancel();
+        assertTrue(queued.isDone());
+        assertTrue(queued.getResult().isCancelled());
+        running.getResult().get(10, TimeUnit.SECONDS);
+
+        // the search thread goes on to the next search, which is not handed anything the cancelled one found
+        Pathfinder next = new Pathfinder(config, WorldPointUtil.unpackWorldPoint(start), WorldPointUtil.unpackWorldPoint(target));
+        List<WorldPoint> path = next.getResult().get(10, TimeUnit.SECONDS);
+        int expected = DistanceFieldTest.dijkstra(tiles, map, transports, start, false).get(target);
+        assertEquals(expected, cost(transports, path, target));
+
+        // cancelling a search that has finished keeps its path
+        next.cancel();
+        assertFalse(next.getResult().isCancelled());
+        assertEquals(path, next.getResult().get());
+    }
+
+    @Test
+    public void headsForTheTargetsOutsideTheWildernessWhenAvoidingIt() throws Exception {
+        // the wilderness starts 23 tiles north of the south edge of this map
+        String[] rows = new String[40];
+        Arrays.fill(rows, String.join("", Collections.nCopies(48, ".")));
+        CollisionMap map = TestMaps.fromRows(3200, 3500, rows);
+        WorldPoint start = new WorldPoint(3210, 3530, 0);
+        WorldPoint inside = new WorldPoint(3210, 3534, 0);
+        WorldPoint outside = new WorldPoint(3210, 3505, 0);
+        List<Transport> transports = new ArrayList<>();
+
+        for (boolean avoidWilderness : new boolean[]{true, false}) {
+            for (boolean jumpPointSearch : new boolean[]{true, false}) {
+                PathfinderConfig config = config(map, transports, new ShortestPathConfig() {
+                    @Override
+                    public boolean avoidWilderness() {
+                        return avoidWilderness;
+                    }
+
+                    @Override
+                    public boolean jumpPointSearch() {
+                        return jumpPointSearch;
+                    }
+                });
+                // from inside the wilderness, and from outside it with the target in it nearer
+                for (WorldPoint from : new WorldPoint[]{start, new WorldPoint(3210, 3522, 0)}) {
+                    Pathfinder pathfinder = new Pathfinder(config, from, Arrays.asList(inside, outside));
+                    List<WorldPoint> path = pathfinder.getResult().get(10, TimeUnit.SECONDS);
+                    WorldPoint expected = avoidWilderness ? outside : inside;
+                    assertEquals("avoiding the wilderness " + avoidWilderness + " jumping " + jumpPointSearch + " from " + from,
+                        expected, pathfinder.getTarget());
+                    assertEquals(expected, path.get(path.size() - 1));
+                    assertTrue(isWalkable(map, transports, path));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void teleportsWithTheArdougneCloakWhenItIsQuicker() throws Exception {
+        // an open map around where the cloak teleports to, 47 tiles east and 21 north of the south-west corner
+        String[] rows = new String[40];
+        Arrays.fill(rows, String.join("", Collections.nCopies(64, ".")));
+        CollisionMap map = TestMaps.fromRows(2560, 3200, rows);
+        WorldPoint start = new WorldPoint(2560, 3200, 0);
+        WorldPoint target = new WorldPoint(2607, 3224, 0);
+        WorldPoint monastery = new WorldPoint(2607, 3221, 0);
+        List<Transport> transports = new ArrayList<>();
+
+        for (boolean useArdyCloak : new boolean[]{true, false}) {
+            for (boolean checkArdyCloak : new boolean[]{true, false}) {
+                for (boolean searchBothWays : new boolean[]{true, false}) {
+                    PathfinderConfig config = config(map, transports, new ShortestPathConfig() {
+                        @Override
+                        public boolean useArdyCloak() {
+                            return useArdyCloak;
+                        }
+
+                        @Override
+                        public boolean checkArdyCloak() {
+                            return checkArdyCloak;
+                        }
+
+                        @Override
+                        public boolean searchBothWays() {
+                            return searchBothWays;
+                        }
+                    });
+                    List<WorldPoint> path = new Pathfinder(config, start, target).getResult().get(10, TimeUnit.SECONDS);
+                    // the player has no cloak, so checking for one rules the teleport out
+                    boolean teleported = useArdyCloak && !checkArdyCloak;
+                    String settings = "using the cloak " + useArdyCloak + " checking for it " + checkArdyCloak +
+                        " searching both ways " + searchBothWays;
+                    assertEquals(settings, target, path.get(path.size() - 1));
+                    assertEquals(settings, teleported ? Arrays.asList(start, monastery) : Arrays.asList(start),
+                        path.subList(0, teleported ? 2 : 1));
+                    assertEquals(settings, teleported ? 2 + 3 : 1 + 47, path.size());
+                }
+            }
+        }
+    }
+
+    private PathfinderConfig config(CollisionMap map, List<Transport> transports, boolean searchBothWays) {
+        return config(map, transports, new ShortestPathConfig() {
+            @Override
+            public boolean searchBothWays() {
+                return searchBothWays;
+            }
+        });
+    }
+
+    private PathfinderConfig config(CollisionMap map, List<Transport> transports, ShortestPathConfig settings) {
+        Map<WorldPoint, List<Transport>> byOrigin = new HashMap<>();
+        for (Transport transport : transports) {
+            byOrigin.computeIfAbsent(transport.getOrigin(), k -> new ArrayList<>()).add(transport);
+        }
+        ClientThread clientThread = new ClientThread() {
+            @Override
+            public void invokeLater(Runnable runnable) {
+                runnable.run();
+            }
+        };
+        ShortestPathPlugin plugin = new ShortestPathPlugin() {
+            @Override
+            public ClientThread getClientThread() {
+                return clientThread;
+            }
+
+            @Override
+            public boolean playerHasAxe() {
+                return false;
+            }
+
+            @Override
+            public boolean playerHasArdyCloak() {
+                return false;
+            }
+        };
+        PathfinderConfig config = new PathfinderConfig(map, byOrigin, client(), settings, plugin);
+        configs.add(config);
+        return config;
+    }
+
+    /**
+     * A logged in client without a player, which answers anything else with nothing
+     */
+    private static Client client() {
+        return (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getGameState":
+                    return GameState.LOGGED_IN;
+                case "getBoostedSkillLevel":
+                    return 99;
+                case "getIntStack":
+                    return new int[1];
+            }
+            Class<?> type = method.getReturnType();
+            return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+        });
+    }
+
+    private static List<WorldPoint> search(PathfinderConfig config, int start, int target) throws Exception {
+        Pathfinder pathfinder = new Pathfinder(config, WorldPointUtil.unpackWorldPoint(start), WorldPointUtil.unpackWorldPoint(target));
+        return pathfinder.getResult().get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Whether each step of a path that is not a transport can be walked
+     */
+    private static boolean isWalkable(CollisionMap map, List<Transport> transports, List<WorldPoint> path) {
+        for (int i = 1; i < path.size(); i++) {
+            WorldPoint from = path.get(i - 1);
+            WorldPoint to = path.get(i);
+            boolean transported = transports.stream()
+                .anyMatch(transport -> transport.getOrigin().equals(from) && transport.getDestination().equals(to));
+            int direction = direction(from, to);
+            if (!transported && (direction < 0 || from.getPlane() != to.getPlane() ||
+                (map.getTraversable(from.getX(), from.getY(), from.getPlane()) & (1 << direction)) == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The ordinal of the direction of a single step between two tiles, or -1
+     */
+    private static int direction(WorldPoint from, WorldPoint to) {
+        for (OrdinalDirection direction : OrdinalDirection.values()) {
+            if (from.getX() + direction.x == to.getX() && from.getY() + direction.y == to.getY()) {
+                return direction.ordinal();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The travel time along a path, taking the quickest way between each two tiles, or -1 if it does not lead
+     * to the target or has a step that cannot be taken
+     */
+    private static int cost(List<Transport> transports, List<WorldPoint> path, int target) {
+        if (path.isEmpty() || WorldPointUtil.packWorldPoint(path.get(path.size() - 1)) != target) {
+            return -1;
+        }
+        int cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            WorldPoint from = path.get(i - 1);
+            WorldPoint to = path.get(i);
+            int step = from.getPlane() == to.getPlane() && from.distanceTo(to) == 1 ? 1 : Integer.MAX_VALUE;
+            for (Transport transport : transports) {
+                if (transport.getOrigin().equals(from) && transport.getDestination().equals(to)) {
+                    step = Math.min(step, Pathfinder.getCost(transport));
+                }
+            }
+            if (step == Integer.MAX_VALUE) {
+                return -1;
+            }
+            cost += step;
+        }
+        return cost;
+    }
+}
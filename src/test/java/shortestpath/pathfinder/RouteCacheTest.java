@@ -0,0 +1,72 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Test;
+import shortestpath.TestTransports;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RouteCacheTest {
+    private static final int TARGET = TestMaps.tile(4, 0);
+    private static final List<Transport> TRANSPORTS = Collections.singletonList(
+        TestTransports.transport(TestMaps.tile(1, 0), TestMaps.tile(3, 0), 1));
+    private static final List<Transport> TELEPORTS = Collections.emptyList();
+
+    @Test
+    public void followsTheRestOfAKeptPathFromAnyTileOnIt() {
+        RouteCache cache = new RouteCache();
+        cache.put(TARGET, TRANSPORTS, TELEPORTS, false, path(0, 1, 3, 4));
+
+        assertEquals(path(0, 1, 3, 4), cache.get(TestMaps.tile(0, 0), TARGET, TRANSPORTS, TELEPORTS, false));
+        assertEquals(path(3, 4), cache.get(TestMaps.tile(3, 0), TARGET, TRANSPORTS, TELEPORTS, false));
+        assertEquals(path(4), cache.get(TARGET, TARGET, TRANSPORTS, TELEPORTS, false));
+        // the tile the transport passes over is not on the path
+        assertNull(cache.get(TestMaps.tile(2, 0), TARGET, TRANSPORTS, TELEPORTS, false));
+        assertNull(cache.get(TestMaps.tile(0, 0), TestMaps.tile(3, 0), TRANSPORTS, TELEPORTS, false));
+    }
+
+    @Test
+    public void missesWhenWhatDecidesThePathChanges() {
+        RouteCache cache = new RouteCache();
+        cache.put(TARGET, TRANSPORTS, TELEPORTS, false, path(0, 1, 3, 4));
+        int start = TestMaps.tile(0, 0);
+
+        // equal lists filtered again still hit
+        assertEquals(path(0, 1, 3, 4), cache.get(start, TARGET, new ArrayList<>(TRANSPORTS), new ArrayList<>(TELEPORTS), false));
+        assertNull(cache.get(start, TARGET, Collections.emptyList(), TELEPORTS, false));
+        List<Transport> more = new ArrayList<>(TRANSPORTS);
+        more.add(TestTransports.transport(TestMaps.tile(0, 0), TARGET, 1));
+        assertNull(cache.get(start, TARGET, more, TELEPORTS, false));
+        assertNull(cache.get(start, TARGET, TRANSPORTS,
+            Collections.singletonList(TestTransports.transport(TestMaps.tile(0, 4), TestMaps.tile(4, 4), 3)), false));
+        assertNull(cache.get(start, TARGET, TRANSPORTS, TELEPORTS, true));
+    }
+
+    @Test
+    public void replacesThePathKeptForTheSameKey() {
+        RouteCache cache = new RouteCache();
+        cache.put(TARGET, TRANSPORTS, TELEPORTS, false, path(0, 1, 3, 4));
+        cache.put(TARGET, TRANSPORTS, TELEPORTS, false, path(2, 3, 4));
+
+        assertNull(cache.get(TestMaps.tile(0, 0), TARGET, TRANSPORTS, TELEPORTS, false));
+        assertEquals(path(2, 3, 4), cache.get(TestMaps.tile(2, 0), TARGET, TRANSPORTS, TELEPORTS, false));
+    }
+
+    /**
+     * A path along the southmost row of the test maps
+     */
+    private static List<WorldPoint> path(int... columns) {
+        WorldPoint[] path = new WorldPoint[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            path[i] = WorldPointUtil.unpackWorldPoint(TestMaps.tile(columns[i], 0));
+        }
+        return Arrays.asList(path);
+    }
+}
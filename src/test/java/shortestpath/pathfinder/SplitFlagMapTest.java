@@ -0,0 +1,66 @@
+package shortestpath.pathfinder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SplitFlagMapTest {
+    /** Enough regions to take more than the size limit, even without any flags in them */
+    private static final int REGIONS_ALONG_AXIS = 64;
+
+    @Test
+    public void evictsRegionsPastTheSizeLimitAndLoadsThemAgain() {
+        CollisionMap map = TestMaps.fromRows(
+            ".#",
+            "..");
+        int regionX = TestMaps.MIN_X / 64;
+        int regionY = TestMaps.MIN_Y / 64;
+        assertTrue(map.n(TestMaps.MIN_X, TestMaps.MIN_Y, 0));
+        FlagMap region = map.getLoadedRegion(regionX, regionY);
+        assertNotNull(region);
+
+        loadOtherRegions(map, regionX, regionY, false);
+        assertTrue(map.getLoadedSize() <= SplitFlagMap.MAXIMUM_SIZE);
+        assertNull(map.getLoadedRegion(regionX, regionY));
+
+        // loaded again from the same flags
+        assertTrue(map.n(TestMaps.MIN_X, TestMaps.MIN_Y, 0));
+        assertFalse(map.e(TestMaps.MIN_X, TestMaps.MIN_Y + 1, 0));
+        assertTrue(map.isBlocked(TestMaps.MIN_X + 1, TestMaps.MIN_Y + 1, 0));
+        assertNotSame(region, map.getLoadedRegion(regionX, regionY));
+    }
+
+    @Test
+    public void keepsTheRegionsInUse() {
+        CollisionMap map = TestMaps.fromRows("..");
+        int regionX = TestMaps.MIN_X / 64;
+        int regionY = TestMaps.MIN_Y / 64;
+        map.e(TestMaps.MIN_X, TestMaps.MIN_Y, 0);
+        FlagMap region = map.getLoadedRegion(regionX, regionY);
+
+        loadOtherRegions(map, regionX, regionY, true);
+        assertTrue(map.getLoadedSize() <= SplitFlagMap.MAXIMUM_SIZE);
+        assertSame(region, map.getLoadedRegion(regionX, regionY));
+    }
+
+    /**
+     * Loads every other region in a block of them, optionally using a region again after each load
+     */
+    private static void loadOtherRegions(CollisionMap map, int regionX, int regionY, boolean useRegion) {
+        for (int x = 0; x < REGIONS_ALONG_AXIS; x++) {
+            for (int y = 0; y < REGIONS_ALONG_AXIS; y++) {
+                if (x != regionX || y != regionY) {
+                    map.n(x * 64, y * 64, 0);
+                }
+                if (useRegion) {
+                    map.n(regionX * 64, regionY * 64, 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package shortestpath.pathfinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import shortestpath.WorldPointUtil;
+
+/**
+ * Small collision maps for tests, drawn as rows of text with the northmost row first. A '#' is a blocked tile,
+ * and any other character a tile that can be walked to from the open tiles next to it.
+ */
+class TestMaps {
+    /** The south-west corner of every map, which is the corner of a region */
+    static final int MIN_X = 3200;
+    static final int MIN_Y = 3200;
+    private static final int REGION_SIZE = 64;
+    private static final int FLAG_COUNT = 2;
+
+    static CollisionMap fromRows(String... rows) {
+        return fromRows(MIN_X, MIN_Y, rows);
+    }
+
+    /**
+     * A map with its south-west corner somewhere else, such as in the wilderness
+     */
+    static CollisionMap fromRows(int minX, int minY, String... rows) {
+        int height = rows.length;
+        int width = rows[0].length();
+        Map<SplitFlagMap.Position, FlagMap> regions = new HashMap<>();
+        for (int row = 0; row < height; row++) {
+            int y = minY + height - 1 - row;
+            for (int column = 0; column < width; column++) {
+                int x = minX + column;
+                if (isBlocked(rows, column, row)) {
+                    continue;
+                }
+                if (row > 0 && !isBlocked(rows, column, row - 1)) {
+                    region(regions, x, y).set(x, y, 0, 0, true);
+                }
+                if (column + 1 < width && !isBlocked(rows, column + 1, row)) {
+                    region(regions, x, y).set(x, y, 0, 1, true);
+                }
+            }
+        }
+
+        return write(regions);
+    }
+
+    private static CollisionMap write(Map<SplitFlagMap.Position, FlagMap> regions) {
+        Map<SplitFlagMap.Position, byte[]> bytes = new HashMap<>();
+        for (Map.Entry<SplitFlagMap.Position, FlagMap> region : regions.entrySet()) {
+            bytes.put(region.getKey(), region.getValue().toBytes());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            SplitFlagMap.write(out, REGION_SIZE, FLAG_COUNT, bytes, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new CollisionMap(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * A map with a share of its tiles blocked at random
+     */
+    static CollisionMap random(int width, int height, double blocked, long seed) {
+        Random random = new Random(seed);
+        String[] rows = new String[height];
+        for (int row = 0; row < height; row++) {
+            StringBuilder tiles = new StringBuilder();
+            for (int column = 0; column < width; column++) {
+                tiles.append(random.nextDouble() < blocked ? '#' : '.');
+            }
+            rows[row] = tiles.toString();
+        }
+        return fromRows(rows);
+    }
+
+    /**
+     * A map with the flags of each tile set at random, so that besides blocked tiles it has walls between tiles
+     * and steps that can only be taken one way
+     */
+    static CollisionMap randomFlags(int width, int height, long seed) {
+        Random random = new Random(seed);
+        Map<SplitFlagMap.Position, FlagMap> regions = new HashMap<>();
+        for (int column = 0; column < width; column++) {
+            for (int row = 0; row < height; row++) {
+                int x = MIN_X + column;
+                int y = MIN_Y + row;
+                if (random.nextDouble() < 0.15) {
+                    continue;
+                }
+                region(regions, x, y).set(x, y, 0, 0, random.nextDouble() < 0.8);
+                region(regions, x, y).set(x, y, 0, 1, random.nextDouble() < 0.8);
+            }
+        }
+        return write(regions);
+    }
+
+    /**
+     * The packed point of a tile, counted from the south-west corner of the map
+     */
+    static int tile(int column, int rowFromSouth) {
+        return WorldPointUtil.packWorldPoint(MIN_X + column, MIN_Y + rowFromSouth, 0);
+    }
+
+    private static boolean isBlocked(String[] rows, int column, int row) {
+        return rows[row].charAt(column) == '#';
+    }
+
+    private static FlagMap region(Map<SplitFlagMap.Position, FlagMap> regions, int x, int y) {
+        SplitFlagMap.Position position = new SplitFlagMap.Position(x / REGION_SIZE, y / REGION_SIZE);
+        return regions.computeIfAbsent(position, p -> new FlagMap(p.x * REGION_SIZE, p.y * REGION_SIZE,
+            p.x * REGION_SIZE + REGION_SIZE - 1, p.y * REGION_SIZE + REGION_SIZE - 1, FLAG_COUNT));
+    }
+}
@@ -0,0 +1,79 @@
+package shortestpath.pathfinder;
+
+import org.junit.Test;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+
+public class TileIntMapTest {
+    @Test
+    public void returnsTheDefaultValueForTilesNeverWritten() {
+        TileIntMap map = new TileIntMap(-1);
+        assertEquals(-1, map.get(WorldPointUtil.packWorldPoint(3200, 3200, 0)));
+
+        map.put(WorldPointUtil.packWorldPoint(3200, 3200, 0), 7);
+        assertEquals(-1, map.get(WorldPointUtil.packWorldPoint(3201, 3200, 0)));
+        assertEquals(-1, map.get(WorldPointUtil.packWorldPoint(3200, 3200, 1)));
+    }
+
+    @Test
+    public void keepsValuesApartAcrossRegionsAndPlanes() {
+        TileIntMap map = new TileIntMap(-1);
+        int value = 0;
+        for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+            for (int x = 3190; x < 3270; x += 3) {
+                for (int y = 3190; y < 3270; y += 5) {
+                    map.put(WorldPointUtil.packWorldPoint(x, y, z), value++);
+                }
+            }
+        }
+
+        value = 0;
+        for (int z = 0; z < FlagMap.PLANE_COUNT; z++) {
+            for (int x = 3190; x < 3270; x += 3) {
+                for (int y = 3190; y < 3270; y += 5) {
+                    assertEquals(value++, map.get(WorldPointUtil.packWorldPoint(x, y, z)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void clearResetsTheWrittenPagesForReuse() {
+        TileIntMap map = new TileIntMap(-1);
+        int first = WorldPointUtil.packWorldPoint(3200, 3200, 0);
+        int second = WorldPointUtil.packWorldPoint(2500, 3500, 2);
+        map.put(first, 1);
+        map.put(second, 2);
+
+        map.clear();
+        assertEquals(-1, map.get(first));
+        assertEquals(-1, map.get(second));
+
+        map.put(second, 3);
+        map.clear();
+        assertEquals(-1, map.get(second));
+    }
+
+    @Test
+    public void keepsOnlyAFewClearedPagesForReuse() {
+        TileIntMap map = new TileIntMap(-1);
+        int pages = TileIntMap.MAXIMUM_SPARE_PAGES + 40;
+        for (int i = 0; i < pages; i++) {
+            map.put(WorldPointUtil.packWorldPoint(64 * (i % 100) + 5, 64 * (i / 100) + 7, 0), i);
+        }
+        assertEquals(pages, map.getPageCount());
+
+        map.clear();
+        assertEquals(0, map.getPageCount());
+        assertEquals(TileIntMap.MAXIMUM_SPARE_PAGES, map.getSparePageCount());
+
+        // a page taken back holds nothing written before the clear
+        int tile = WorldPointUtil.packWorldPoint(3200, 3200, 1);
+        map.put(tile, 5);
+        assertEquals(TileIntMap.MAXIMUM_SPARE_PAGES - 1, map.getSparePageCount());
+        assertEquals(5, map.get(tile));
+        assertEquals(-1, map.get(WorldPointUtil.packWorldPoint(3205, 3207, 1)));
+        assertEquals(-1, map.get(WorldPointUtil.packWorldPoint(5, 7, 0)));
+    }
+}
@@ -0,0 +1,190 @@
+package shortestpath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import shortestpath.TestTransports;
+import shortestpath.Transport;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransportGraphTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 40;
+
+    @Test
+    public void keepsANetworkWithTheSameEdgeCostsAsItsTransports() {
+        // two of the stations are blocked, so they are used from the tiles next to them
+        int[] stations = {TestMaps.tile(5, 5), TestMaps.tile(20, 8), TestMaps.tile(35, 30), TestMaps.tile(10, 33),
+            TestMaps.tile(40, 12)};
+        CollisionMap map = mapBlocking(stations[0], stations[2]);
+        List<Transport> transports = network(stations, 10);
+        // a tile which leads to every station without being one
+        for (int station : stations) {
+            transports.add(TestTransports.transport(TestMaps.tile(25, 20), station, 10));
+        }
+        transports.addAll(DistanceFieldTest.randomTransports(map, 6, new Random(1)));
+        TransportGraph graph = new TransportGraph(map, transports);
+
+        assertEquals(1, graph.getNetworkCount());
+        for (boolean reverse : new boolean[]{false, true}) {
+            assertEquals("reverse " + reverse, expectedEdges(map, transports), edges(graph, reverse));
+        }
+    }
+
+    @Test
+    public void keepsTransportsThatCostMoreOrLessThanTheirNetwork() {
+        int[] stations = {TestMaps.tile(5, 5), TestMaps.tile(20, 8), TestMaps.tile(35, 30), TestMaps.tile(10, 33)};
+        CollisionMap map = mapBlocking(stations[0]);
+        List<Transport> transports = network(stations, 10);
+        transports.add(TestTransports.transport(stations[1], stations[3], 4));
+        transports.add(TestTransports.transport(stations[2], stations[1], 30));
+        TransportGraph graph = new TransportGraph(map, transports);
+
+        assertEquals(1, graph.getNetworkCount());
+        for (boolean reverse : new boolean[]{false, true}) {
+            Map<Long, Integer> edges = edges(graph, reverse);
+            assertEquals("reverse " + reverse, expectedEdges(map, transports), edges);
+            assertEquals(4, (int) edges.get(edgeKey(stations[1], stations[3])));
+            assertEquals(10, (int) edges.get(edgeKey(stations[2], stations[1])));
+        }
+    }
+
+    @Test
+    public void keepsTheEdgesOfTooFewStations() {
+        int[] stations = {TestMaps.tile(5, 5), TestMaps.tile(20, 8)};
+        CollisionMap map = mapBlocking(stations[0]);
+        List<Transport> transports = network(stations, 10);
+        TransportGraph graph = new TransportGraph(map, transports);
+
+        assertEquals(0, graph.getNetworkCount());
+        for (boolean reverse : new boolean[]{false, true}) {
+            assertEquals("reverse " + reverse, expectedEdges(map, transports), edges(graph, reverse));
+        }
+    }
+
+    @Test
+    public void findsTheTravelTimesThroughANetwork() {
+        for (long seed = 0; seed < 4; seed++) {
+            CollisionMap map = TestMaps.random(WIDTH, HEIGHT, 0.25, seed);
+            Random random = new Random(seed);
+            List<Integer> tiles = DistanceFieldTest.openTiles(map);
+            int[] stations = new int[5];
+            for (int i = 0; i < stations.length; i++) {
+                stations[i] = tiles.get(random.nextInt(tiles.size()));
+            }
+            List<Transport> transports = network(Arrays.stream(stations).distinct().toArray(), 1 + random.nextInt(20));
+            transports.addAll(DistanceFieldTest.randomTransports(map, 8, random));
+            TransportGraph graph = new TransportGraph(map, transports);
+            int root = tiles.get(random.nextInt(tiles.size()));
+
+            for (boolean reverse : new boolean[]{false, true}) {
+                DistanceField field = new DistanceField(map, graph, root, reverse, false);
+                field.expandTo(Integer.MAX_VALUE);
+                Map<Integer, Integer> expected = DistanceFieldTest.dijkstra(map, transports, root, reverse);
+                for (int tile : tiles) {
+                    assertEquals("seed " + seed + " reverse " + reverse,
+                        (int) expected.getOrDefault(tile, DistanceField.UNREACHED), field.getDistance(tile));
+                }
+            }
+        }
+    }
+
+    /**
+     * Transports from every station to every other at the same wait
+     */
+    private static List<Transport> network(int[] stations, int wait) {
+        List<Transport> transports = new ArrayList<>();
+        for (int origin : stations) {
+            for (int destination : stations) {
+                if (origin != destination) {
+                    transports.add(TestTransports.transport(origin, destination, wait));
+                }
+            }
+        }
+        return transports;
+    }
+
+    /**
+     * An open map with the given tiles blocked
+     */
+    private static CollisionMap mapBlocking(int... blocked) {
+        char[][] rows = new char[HEIGHT][WIDTH];
+        for (char[] row : rows) {
+            Arrays.fill(row, '.');
+        }
+        for (int tile : blocked) {
+            rows[HEIGHT - 1 - (WorldPointUtil.unpackWorldY(tile) - TestMaps.MIN_Y)][WorldPointUtil.unpackWorldX(tile) - TestMaps.MIN_X] = '#';
+        }
+        return TestMaps.fromRows(Arrays.stream(rows).map(String::new).toArray(String[]::new));
+    }
+
+    /**
+     * The cheapest edge between each two tiles the transports lead between, including from the tiles next to
+     * a blocked origin for an extra step
+     */
+    private static Map<Long, Integer> expectedEdges(CollisionMap map, List<Transport> transports) {
+        Map<Long, Integer> edges = new HashMap<>();
+        for (Transport transport : transports) {
+            int origin = WorldPointUtil.packWorldPoint(transport.getOrigin());
+            int destination = WorldPointUtil.packWorldPoint(transport.getDestination());
+            int cost = Pathfinder.getCost(transport);
+            edges.merge(edgeKey(origin, destination), cost, Math::min);
+            if (map.isBlocked(transport.getOrigin().getX(), transport.getOrigin().getY(), transport.getOrigin().getPlane())) {
+                for (OrdinalDirection direction : OrdinalDirection.values()) {
+                    edges.merge(edgeKey(TransportGraph.move(origin, direction), destination), cost + 1, Math::min);
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * The cheapest edge between each two tiles of the map and the tiles around it, taking the edges of the graph
+     * and every way through each network that does not lead from a station to itself
+     */
+    private static Map<Long, Integer> edges(TransportGraph graph, boolean reverse) {
+        EdgeIndex index = graph.getEdges(reverse);
+        EdgeIndex entries = graph.getNetworkEntries(reverse);
+        EdgeIndex exits = graph.getNetworkExits(reverse);
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int x = -1; x <= WIDTH; x++) {
+            for (int y = -1; y <= HEIGHT; y++) {
+                int tile = TestMaps.tile(x, y);
+                int row = index.find(tile);
+                if (row != EdgeIndex.NONE) {
+                    for (int edge = index.start(row); edge < index.end(row); edge++) {
+                        addEdge(edges, tile, index.tile(edge), index.cost(edge), reverse);
+                    }
+                }
+
+                row = entries.find(tile);
+                if (row == EdgeIndex.NONE) {
+                    continue;
+                }
+                for (int entry = entries.start(row); entry < entries.end(row); entry++) {
+                    int exitRow = exits.find(entries.tile(entry));
+                    for (int exit = exits.start(exitRow); exit < exits.end(exitRow); exit++) {
+                        if (!TransportGraph.isLoop(tile, entries.via(entry), exits.tile(exit), exits.via(exit))) {
+                            addEdge(edges, tile, exits.tile(exit), entries.cost(entry) + exits.cost(exit), reverse);
+                        }
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    private static void addEdge(Map<Long, Integer> edges, int from, int to, int cost, boolean reverse) {
+        edges.merge(reverse ? edgeKey(to, from) : edgeKey(from, to), cost, Math::min);
+    }
+
+    private static long edgeKey(int origin, int destination) {
+        return ((long) origin << 32) | (destination & 0xFFFFFFFFL);
+    }
+}
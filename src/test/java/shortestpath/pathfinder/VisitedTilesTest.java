@@ -0,0 +1,55 @@
+package shortestpath.pathfinder;
+
+import org.junit.Test;
+import shortestpath.WorldPointUtil;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VisitedTilesTest {
+    @Test
+    public void keepsTilesApartAcrossRegionsAndPlanes() {
+        VisitedTiles visited = new VisitedTiles();
+        int tile = WorldPointUtil.packWorldPoint(3200, 3200, 0);
+        assertTrue(visited.add(tile));
+        assertFalse(visited.add(tile));
+
+        assertTrue(visited.get(tile));
+        assertFalse(visited.get(WorldPointUtil.packWorldPoint(3200, 3200, 1)));
+        assertFalse(visited.get(WorldPointUtil.packWorldPoint(3201, 3200, 0)));
+        assertFalse(visited.get(WorldPointUtil.packWorldPoint(3200 + 64, 3200, 0)));
+        assertFalse(visited.get(WorldPointUtil.packWorldPoint(3200, 3200 + 64, 0)));
+    }
+
+    @Test
+    public void coversTheCornersOfARegion() {
+        VisitedTiles visited = new VisitedTiles();
+        int[] corners = {
+            WorldPointUtil.packWorldPoint(3200, 3200, 3),
+            WorldPointUtil.packWorldPoint(3263, 3200, 3),
+            WorldPointUtil.packWorldPoint(3200, 3263, 3),
+            WorldPointUtil.packWorldPoint(3263, 3263, 3),
+        };
+        for (int corner : corners) {
+            assertTrue(visited.add(corner));
+        }
+        for (int corner : corners) {
+            assertTrue(visited.get(corner));
+        }
+        assertFalse(visited.get(WorldPointUtil.packWorldPoint(3264, 3263, 3)));
+    }
+
+    @Test
+    public void clearEmptiesTheTouchedPagesForReuse() {
+        VisitedTiles visited = new VisitedTiles();
+        for (int x = 3000; x < 3300; x += 7) {
+            visited.add(WorldPointUtil.packWorldPoint(x, 3200, 0));
+        }
+        visited.clear();
+
+        for (int x = 3000; x < 3300; x += 7) {
+            assertFalse(visited.get(WorldPointUtil.packWorldPoint(x, 3200, 0)));
+        }
+        assertTrue(visited.add(WorldPointUtil.packWorldPoint(3000, 3200, 0)));
+    }
+}